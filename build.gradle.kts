@@ -2,6 +2,7 @@ plugins {
     java
     application
     id("com.google.protobuf") version "0.8.10" apply false
+    id("me.champeau.gradle.jmh") version "0.4.8" apply false
 }
 
 group = "ru.ifmo.java"
@@ -21,6 +22,9 @@ subprojects {
         implementation("commons-io", "commons-io", "2.6")
         implementation("commons-cli", "commons-cli", "1.4")
         implementation("com.google.protobuf:protobuf-java:3.10.0")
+        implementation("io.netty", "netty-all", "4.1.43.Final")
+        implementation("org.reactivestreams", "reactive-streams", "1.0.3")
+        implementation("net.openhft", "affinity", "3.2.3")
         implementation("org.jetbrains", "annotations", "17.0.0")
         implementation("org.jfree", "jfreechart", "1.5.0")
         testImplementation("junit", "junit", "4.12")
@@ -1,16 +1,43 @@
 package ru.ifmo.java.benchmark.cli.server;
 
 import org.apache.commons.cli.*;
+import ru.ifmo.java.benchmark.JvmComparison;
+import ru.ifmo.java.benchmark.PlacementComparison;
+import ru.ifmo.java.benchmark.ReplayDriver;
+import ru.ifmo.java.benchmark.SaturationComparison;
+import ru.ifmo.java.benchmark.SchedulingComparison;
+import ru.ifmo.java.benchmark.SocketOptionsComparison;
+import ru.ifmo.java.benchmark.TransportComparison;
+import ru.ifmo.java.benchmark.WaitStrategyComparison;
+import ru.ifmo.java.benchmark.launcher.JvmOptions;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.affinity.CpuSet;
+import ru.ifmo.java.benchmark.server.affinity.ThreadPlacement;
 import ru.ifmo.java.benchmark.server.async.AsyncServer;
 import ru.ifmo.java.benchmark.server.blocking.BlockingServer;
 import ru.ifmo.java.benchmark.server.blocking.NaiveBlockingServer;
+import ru.ifmo.java.benchmark.server.metrics.MetricsEndpoint;
+import ru.ifmo.java.benchmark.server.netty.NettyServer;
 import ru.ifmo.java.benchmark.server.nonblocking.NonBlockingServer;
+import ru.ifmo.java.benchmark.server.nonblocking.Transport;
+import ru.ifmo.java.benchmark.server.reactive.ReactiveServer;
+import ru.ifmo.java.benchmark.server.schedule.SchedulingPolicy;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static ru.ifmo.java.benchmark.Benchmark.*;
 
@@ -22,7 +49,49 @@ public class Server {
         options.addOption(null, "blocking", true, "Port for blocking server");
         options.addOption(null, "async", true, "Port for async server");
         options.addOption(null, "non-blocking", true, "Port for nonblocking server");
+        options.addOption(null, "netty", true, "Port for netty server");
+        options.addOption(null, "reactive", true, "Port for reactive server");
+        options.addOption(null, "request-window", true, "Requests of a connection the reactive server reads ahead of responses, 4 by default");
+        options.addOption(null, "inline-threshold-us", true, "Requests expected to be processed faster are processed by the I/O thread of the non-blocking and async servers, disabled by default");
+        options.addOption(null, "event-loops", true, "Number of event loops of the netty server, 2 by default");
         options.addOption(null, "threads", true, "Number of threads");
+        options.addOption(null, "metrics-port", true, "Port for plain-text metrics endpoint, disabled by default");
+        options.addOption(null, "tcp-nodelay", false, "Disable Nagle's algorithm on accepted sockets");
+        options.addOption(null, "sndbuf", true, "SO_SNDBUF of accepted sockets, bytes");
+        options.addOption(null, "rcvbuf", true, "SO_RCVBUF of accepted sockets, bytes");
+        options.addOption(null, "backlog", true, "Backlog of listening sockets");
+        options.addOption(null, "acceptors", true, "Number of accept threads of blocking servers, SO_REUSEPORT listeners on Linux");
+        options.addOption(null, "response-cache-bytes", true, "Memory bound of the cache of sorted arrays, disabled by default");
+        options.addOption(null, "sort", true, "Sort algorithm: " + Arrays.toString(SortAlgorithm.values()) + ", GNOME by default");
+        options.addOption(null, "max-stream-bytes", true, "Memory bound of a chunked array of a connection, 256 MiB by default");
+        options.addOption(null, "stream-chunk", true, "Number of items in chunks of streamed responses");
+        options.addOption(null, "max-frame-size", true, "Connections sending larger frames are closed, 64 MiB by default");
+        options.addOption(null, "connection-memory", true, "Budget of buffered frames of a connection, 128 MiB by default");
+        options.addOption(null, "memory", true, "Budget of buffered frames of all connections, half of the heap by default");
+        options.addOption(null, "scheduling", true, "Order of queued requests: " + Arrays.toString(SchedulingPolicy.values()) + ", FIFO by default");
+        options.addOption(null, "rate-limit", true, "Array items a connection may send per second, not limited by default");
+        options.addOption(null, "rate-burst", true, "Array items a connection may send at once, 65536 by default");
+        options.addOption(null, "transport", true, "Selector provider of the nonblocking server: " + Transport.available().keySet() + ", nio by default");
+        options.addOption(null, "compare-transports", false, "Benchmark the nonblocking server with each available transport on the naive blocking port, print csv and exit");
+        options.addOption(null, "compare-saturation", false, "Saturate all architectures with pipelined requests on the naive blocking port, print csv and exit");
+        options.addOption(null, "compare-scheduling", false, "Run mixed-size load against architectures with a worker pool with each scheduling policy " +
+                "on the naive blocking port, print csv and exit");
+        options.addOption(null, "trace-dir", true, "Directory where every server records arrivals of requests, disabled by default");
+        options.addOption(null, "replay", true, "Replay a trace against all architectures on the naive blocking port, print csv and exit");
+        options.addOption(null, "time-scale", true, "Speed of the replay relative to the trace, 1 by default");
+        options.addOption(null, "compare-jvm", true, "Benchmark all architectures forked with each collector on the naive blocking port, " +
+                "write GC logs to the given directory, print csv and exit");
+        options.addOption(null, "jvm-cpus", true, "CPU list of forked servers for taskset, not pinned by default");
+        options.addOption(null, "io-cpus", true, "CPU list the selector and event loop threads are pinned to, Linux only, not pinned by default");
+        options.addOption(null, "worker-cpus", true, "CPU list the working pool threads are pinned to, Linux only, not pinned by default");
+        options.addOption(null, "numa-local", false, "Pin the I/O threads and the working pool of each server to the CPUs of one NUMA node, " +
+                "servers are spread over the nodes");
+        options.addOption(null, "compare-placement", false, "Benchmark all architectures unpinned and with the given thread placement " +
+                "on the naive blocking port, print csv and exit");
+        options.addOption(null, "wait-strategy", true, "How idle workers and selectors wait: " + Arrays.toString(WaitStrategy.values()) + ", BLOCKING by default");
+        options.addOption(null, "compare-wait-strategies", false, "Benchmark all architectures with a worker pool with each wait strategy at low load " +
+                "on the naive blocking port, print csv with the CPU used and exit");
+        options.addOption(null, "compare-socket-options", false, "Benchmark all architectures with each socket options preset on the naive blocking port, print csv and exit");
 
         try {
             CommandLineParser parser = new DefaultParser();
@@ -32,16 +101,136 @@ public class Server {
             int blockingPort = Integer.parseInt(cmd.getOptionValue("blocking", String.valueOf(DEFAULT_BLOCKING_PORT)));
             int asyncPort = Integer.parseInt(cmd.getOptionValue("async", String.valueOf(DEFAULT_ASYNC_PORT)));
             int nonBlockingPort = Integer.parseInt(cmd.getOptionValue("non-blocking", String.valueOf(DEFAULT_NON_BLOCKING_PORT)));
+            int nettyPort = Integer.parseInt(cmd.getOptionValue("netty", String.valueOf(DEFAULT_NETTY_PORT)));
+            int reactivePort = Integer.parseInt(cmd.getOptionValue("reactive", String.valueOf(DEFAULT_REACTIVE_PORT)));
 
             int threadsNumber = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(4)));
 
             String host = cmd.getOptionValue("host", DEFAULT_HOST);
 
+            if (cmd.hasOption("compare-socket-options")) {
+                List<SocketOptionsComparison.Result> results = new SocketOptionsComparison(host, naiveBlockingPort).compare(
+                        EnumSet.allOf(ru.ifmo.java.benchmark.server.Server.ServerType.class), SocketOptions.presets(), threadsNumber,
+                        20, Arrays.asList(100, 1000, 5000), Arrays.asList(10, 10, 10), Arrays.asList(10, 10, 10));
+                System.out.println(SocketOptionsComparison.toCsv(results));
+                return;
+            }
+
+            if (cmd.hasOption("compare-jvm")) {
+                Map<String, JvmOptions> configurations = JvmOptions.presets();
+                if (cmd.hasOption("jvm-cpus")) {
+                    configurations.values().forEach(jvmOptions -> jvmOptions.setCpus(cmd.getOptionValue("jvm-cpus")));
+                }
+                Path workDirectory = Files.createDirectories(Paths.get(cmd.getOptionValue("compare-jvm")));
+                List<JvmComparison.Result> results = new JvmComparison(host, naiveBlockingPort, workDirectory).compare(
+                        EnumSet.allOf(ru.ifmo.java.benchmark.server.Server.ServerType.class), configurations, threadsNumber,
+                        20, Arrays.asList(100, 1000, 5000), Arrays.asList(10, 10, 10), Arrays.asList(10, 10, 10));
+                System.out.println(JvmComparison.toCsv(results));
+                return;
+            }
+
+            SocketOptions socketOptions = new SocketOptions()
+                    .setTcpNoDelay(cmd.hasOption("tcp-nodelay") ? true : null)
+                    .setSendBufferSize(Integer.parseInt(cmd.getOptionValue("sndbuf", "0")))
+                    .setReceiveBufferSize(Integer.parseInt(cmd.getOptionValue("rcvbuf", "0")))
+                    .setBacklog(Integer.parseInt(cmd.getOptionValue("backlog", "0")));
+            ServerConfig config = new ServerConfig()
+                    .setThreads(threadsNumber)
+                    .setSocketOptions(socketOptions)
+                    .setAcceptors(Integer.parseInt(cmd.getOptionValue("acceptors", "1")))
+                    .setEventLoopThreads(Integer.parseInt(cmd.getOptionValue("event-loops", "2")))
+                    .setRequestWindow(Integer.parseInt(cmd.getOptionValue("request-window", "4")))
+                    .setInlineThresholdNanos(TimeUnit.MICROSECONDS.toNanos(Long.parseLong(cmd.getOptionValue("inline-threshold-us", "0"))))
+                    .setResponseCacheBytes(Long.parseLong(cmd.getOptionValue("response-cache-bytes", "0")))
+                    .setSortAlgorithm(SortAlgorithm.valueOf(cmd.getOptionValue("sort", SortAlgorithm.GNOME.name())));
+            if (cmd.hasOption("max-stream-bytes")) {
+                config.setMaxStreamBytes(Long.parseLong(cmd.getOptionValue("max-stream-bytes")));
+            }
+            if (cmd.hasOption("max-frame-size")) {
+                config.setMaxFrameSize(Integer.parseInt(cmd.getOptionValue("max-frame-size")));
+            }
+            if (cmd.hasOption("connection-memory")) {
+                config.setConnectionMemoryBytes(Long.parseLong(cmd.getOptionValue("connection-memory")));
+            }
+            if (cmd.hasOption("memory")) {
+                config.setMemoryBytes(Long.parseLong(cmd.getOptionValue("memory")));
+            }
+            if (cmd.hasOption("stream-chunk")) {
+                config.setStreamChunkSize(Integer.parseInt(cmd.getOptionValue("stream-chunk")));
+            }
+
+            config.setSchedulingPolicy(SchedulingPolicy.valueOf(cmd.getOptionValue("scheduling", SchedulingPolicy.FIFO.name())));
+            if (cmd.hasOption("rate-limit")) {
+                config.setRateLimit(Double.parseDouble(cmd.getOptionValue("rate-limit")), Long.parseLong(cmd.getOptionValue("rate-burst", String.valueOf(1 << 16))));
+            }
+
+            config.setTransport(Transport.forName(cmd.getOptionValue("transport", Transport.NIO.getName())));
+
+            config.setWaitStrategy(WaitStrategy.valueOf(cmd.getOptionValue("wait-strategy", WaitStrategy.BLOCKING.name())));
+            if (cmd.hasOption("compare-wait-strategies")) {
+                System.out.println(WaitStrategyComparison.toCsv(new WaitStrategyComparison(host, naiveBlockingPort).compare(
+                        EnumSet.complementOf(EnumSet.of(ru.ifmo.java.benchmark.server.Server.ServerType.NAIVE_BLOCKING)),
+                        EnumSet.allOf(WaitStrategy.class), config,
+                        50, Arrays.asList(100, 1000), Arrays.asList(1, 4), Arrays.asList(10, 10))));
+                return;
+            }
+
+            boolean numaLocal = cmd.hasOption("numa-local");
+            ThreadPlacement placement = new ThreadPlacement(
+                    cmd.hasOption("io-cpus") ? CpuSet.parse(cmd.getOptionValue("io-cpus")) : null,
+                    cmd.hasOption("worker-cpus") ? CpuSet.parse(cmd.getOptionValue("worker-cpus")) : null);
+            if (cmd.hasOption("compare-placement")) {
+                System.out.println(PlacementComparison.toCsv(new PlacementComparison(host, naiveBlockingPort).compare(
+                        EnumSet.allOf(ru.ifmo.java.benchmark.server.Server.ServerType.class),
+                        Arrays.asList(ThreadPlacement.UNPINNED, numaLocal ? ThreadPlacement.numaLocal(0) : placement), config,
+                        20, Arrays.asList(100, 1000, 5000), Arrays.asList(10, 50, 10), Arrays.asList(10, 0, 10))));
+                return;
+            }
+            config.setThreadPlacement(placement);
+
+            if (cmd.hasOption("compare-transports")) {
+                System.out.println(TransportComparison.toCsv(new TransportComparison(host, naiveBlockingPort).compare(Transport.available().values(), config,
+                        20, Arrays.asList(100, 1000, 5000), Arrays.asList(10, 50, 10), Arrays.asList(10, 0, 10))));
+                return;
+            }
+
+            if (cmd.hasOption("compare-saturation")) {
+                System.out.println(SaturationComparison.toCsv(new SaturationComparison(host, naiveBlockingPort).compare(
+                        EnumSet.allOf(ru.ifmo.java.benchmark.server.Server.ServerType.class), config)));
+                return;
+            }
+
+            if (cmd.hasOption("compare-scheduling")) {
+                System.out.println(SchedulingComparison.toCsv(new SchedulingComparison(host, naiveBlockingPort).compare(
+                        EnumSet.complementOf(EnumSet.of(ru.ifmo.java.benchmark.server.Server.ServerType.NAIVE_BLOCKING)),
+                        EnumSet.allOf(SchedulingPolicy.class), config)));
+                return;
+            }
+
+            if (cmd.hasOption("replay")) {
+                System.out.println(ReplayDriver.toCsv(ReplayDriver.compare(host, naiveBlockingPort,
+                        EnumSet.allOf(ru.ifmo.java.benchmark.server.Server.ServerType.class), config,
+                        Paths.get(cmd.getOptionValue("replay")), Double.parseDouble(cmd.getOptionValue("time-scale", "1")))));
+                return;
+            }
+            if (cmd.hasOption("trace-dir")) {
+                config.setTraceDirectory(Paths.get(cmd.getOptionValue("trace-dir")));
+            }
+
             List<ru.ifmo.java.benchmark.server.Server> servers = Arrays.asList(
-                    new AsyncServer(host, asyncPort, threadsNumber),
-                    new BlockingServer(host, blockingPort, threadsNumber),
-                    new NaiveBlockingServer(host, naiveBlockingPort),
-                    new NonBlockingServer(host, nonBlockingPort, threadsNumber));
+                    new AsyncServer(host, asyncPort, placed(config, 0, numaLocal)),
+                    new BlockingServer(host, blockingPort, placed(config, 1, numaLocal)),
+                    new NaiveBlockingServer(host, naiveBlockingPort, placed(config, 2, numaLocal)),
+                    new NonBlockingServer(host, nonBlockingPort, placed(config, 3, numaLocal)),
+                    new NettyServer(host, nettyPort, placed(config, 4, numaLocal)),
+                    new ReactiveServer(host, reactivePort, placed(config, 5, numaLocal)));
+
+            if (cmd.hasOption("metrics-port")) {
+                int metricsPort = Integer.parseInt(cmd.getOptionValue("metrics-port"));
+                new MetricsEndpoint(host, metricsPort, servers.stream()
+                        .map(ru.ifmo.java.benchmark.server.Server::getMetrics)
+                        .collect(Collectors.toList())).start();
+            }
 
             ExecutorService executor = Executors.newCachedThreadPool();
             servers.forEach(server -> executor.submit(server::run));
@@ -51,4 +240,11 @@ public class Server {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Servers read the placement when they are created, so the config may be shared
+     */
+    private static ServerConfig placed(ServerConfig config, int server, boolean numaLocal) {
+        return numaLocal ? config.setThreadPlacement(ThreadPlacement.numaLocal(server % CpuSet.nodeCount())) : config;
+    }
 }
@@ -0,0 +1,50 @@
+package ru.ifmo.java.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+// Shadows ru.ifmo.java.benchmark.Benchmark
+import org.openjdk.jmh.annotations.Benchmark;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sort algorithms of the server on arrays of the benchmark, run with {@code ./gradlew common:jmh}.
+ * Gnome sort is quadratic and is left out, it is far slower than the others already at N = 10000.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    int length;
+
+    @Param({"QUICK", "BRANCHLESS_QUICK", "RADIX", "ADAPTIVE"})
+    SortAlgorithm algorithm;
+
+    @Param({"SHUFFLED", "NEARLY_SORTED", "FEW_UNIQUE"})
+    InputDistribution distribution;
+
+    private int[] input;
+    private int[] array;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        input = distribution.generate(length, new Random(42)).stream().mapToInt(Integer::intValue).toArray();
+        array = new int[length];
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        System.arraycopy(input, 0, array, 0, length);
+    }
+
+    @Benchmark
+    public int[] sort() {
+        algorithm.sort(array);
+        return array;
+    }
+}
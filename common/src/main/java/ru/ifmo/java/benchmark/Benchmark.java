@@ -1,11 +1,26 @@
 package ru.ifmo.java.benchmark;
 
 import org.apache.commons.lang3.tuple.Triple;
+import ru.ifmo.java.benchmark.client.ClockOffsetEstimator;
 import ru.ifmo.java.benchmark.client.Client;
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.client.DeadlineExceededException;
+import ru.ifmo.java.benchmark.client.LatencySplit;
+import ru.ifmo.java.benchmark.client.PauseStats;
+import ru.ifmo.java.benchmark.client.PhaseTimes;
+import ru.ifmo.java.benchmark.client.SortClient;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.results.SampleStore;
+import ru.ifmo.java.benchmark.results.SampleSummary;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -18,21 +33,112 @@ public class Benchmark {
     public static final int DEFAULT_BLOCKING_PORT = 12346;
     public static final int DEFAULT_ASYNC_PORT = 12347;
     public static final int DEFAULT_NON_BLOCKING_PORT = 12348;
+    public static final int DEFAULT_NETTY_PORT = 12349;
+    public static final int DEFAULT_REACTIVE_PORT = 12350;
+    // Intervals between requests do not occupy threads of the clients
+    private static final ScheduledExecutorService DELAYS = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
     protected final Logger logger = Logger.getLogger(Benchmark.class.getName());
     final private String host;
     final private int port;
-
-    public Benchmark(String host, int port) {
+    final private SocketOptions socketOptions;
+    final private ClockOffsetEstimator clockOffsetEstimator = new ClockOffsetEstimator();
+    final private Random random = new Random();
+    private InputDistribution inputDistribution = InputDistribution.SHUFFLED;
+    private int streamChunkSize = 0;
+    private SampleStore sampleStore;
+    private ClientEngine clientEngine = ClientEngine.BLOCKING;
+    private int multiplexedConnections = 1;
+    private long requestTimeoutMs = 0;
+
+    public Benchmark(String host, int port, SocketOptions socketOptions) {
         this.host = host;
         this.port = port;
+        this.socketOptions = socketOptions;
+    }
+
+    public Benchmark(String host, int port) {
+        this(host, port, new SocketOptions());
+    }
+
+    /**
+     * Shape of arrays sent in the following evaluations, shuffled by default
+     */
+    public Benchmark setInputDistribution(InputDistribution inputDistribution) {
+        this.inputDistribution = inputDistribution;
+        return this;
+    }
+
+    /**
+     * Number of items in chunks of streamed requests, zero sends every array in a single frame
+     */
+    public Benchmark setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+        return this;
+    }
+
+    /**
+     * Client implementation of the following evaluations, blocking by default
+     */
+    public Benchmark setClientEngine(ClientEngine clientEngine) {
+        this.clientEngine = clientEngine;
+        return this;
+    }
+
+    /**
+     * Number of connections shared by the clients of a point if the client engine multiplexes connections, one by default
+     */
+    public Benchmark setMultiplexedConnections(int multiplexedConnections) {
+        this.multiplexedConnections = multiplexedConnections;
+        return this;
+    }
+
+    /**
+     * Timeout of every request of the following evaluations, zero waits for responses as long as needed.
+     * Expired requests are counted in {@link Point#timeouts} and excluded from the samples.
+     */
+    public Benchmark setRequestTimeout(long requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Store of per-request samples of the following evaluations, a temporary one is created by default
+     */
+    public Benchmark setSampleStore(SampleStore sampleStore) {
+        this.sampleStore = sampleStore;
+        return this;
+    }
+
+    public SampleStore getSampleStore() throws IOException {
+        if (sampleStore == null) {
+            sampleStore = SampleStore.createTemporary(0);
+        }
+        return sampleStore;
+    }
+
+    private static CompletableFuture<Void> delay(long delayMs) {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        if (delayMs == 0) {
+            delayed.complete(null);
+        } else {
+            DELAYS.schedule(() -> delayed.complete(null), delayMs, TimeUnit.MILLISECONDS);
+        }
+        return delayed;
+    }
+
+    private CompletableFuture<Client.Response<List<Integer>>> sortArray(SortClient client, List<Integer> items) {
+        return streamChunkSize > 0 ? client.sortArrayStreaming(items, streamChunkSize) : client.sortArray(items);
     }
 
     public void warmUp() throws IOException {
-        Client client = new Client(host, port);
-        ArrayList<Integer> items = getItems(2000);
-        Collections.shuffle(items);
+        SortClient client = clientEngine.connect(host, port, socketOptions);
+        ArrayList<Integer> items = inputDistribution.generate(2000, random);
 
-        client.sortArray(items).thenRun(() -> {
+        sortArray(client, items).thenAccept(listResponse -> clockOffsetEstimator.addSample(listResponse.getClockSample())).thenRun(() -> {
             try {
                 client.close();
             } catch (IOException ignored) {
@@ -44,39 +150,43 @@ public class Benchmark {
         int pointsCount = Math.min(Math.min(elementCounts.size(), concurrencyClientCounts.size()), timeIntervalsMs.size());
 
         List<Point> results = new ArrayList<>();
+        final SampleStore store = getSampleStore();
 
         for (int i = 0; i < pointsCount; i++) {
             final int currentTimeIntervalMs = timeIntervalsMs.get(i);
             final int currentConcurrencyClient = concurrencyClientCounts.get(i);
             final int currentElementCount = elementCounts.get(i);
 
-            ArrayList<Integer> items = getItems(currentElementCount);
-            Collections.shuffle(items);
+            final int pointIndex = i;
+            final long sampleFrom = store.size();
+            ArrayList<Integer> items = inputDistribution.generate(currentElementCount, random);
 
-            List<Client> clients = new ArrayList<>(currentConcurrencyClient);
+            // Clients are assigned to connections round-robin
+            int connectionCount = clientEngine.isMultiplexing() ? Math.max(1, Math.min(multiplexedConnections, currentConcurrencyClient)) : currentConcurrencyClient;
+            List<SortClient> connections = new ArrayList<>(connectionCount);
+            for (int j = 0; j < connectionCount; j++) {
+                connections.add(clientEngine.connect(host, port, socketOptions).setTimeout(requestTimeoutMs));
+            }
+            List<SortClient> clients = new ArrayList<>(currentConcurrencyClient);
             for (int j = 0; j < currentConcurrencyClient; j++) {
-                clients.add(new Client(host, port));
+                clients.add(connections.get(j % connectionCount));
             }
 
-            List<CompletableFuture<Triple<List<TimeSpent>, Long, Long>>> tasks = new ArrayList<>();
+            // Number of measured requests of a client including expired ones, start and end of its measured requests
+            List<CompletableFuture<Triple<Integer, Long, Long>>> tasks = new ArrayList<>();
 
             final AtomicBoolean firstFinished = new AtomicBoolean(false);
             final AtomicInteger countOfStartedClient = new AtomicInteger(0);
+            final AtomicInteger timeouts = new AtomicInteger(0);
 
-            for (Client client : clients) {
-                CompletableFuture<Triple<List<TimeSpent>, Long, Long>> task = CompletableFuture.completedFuture(Triple.of(new ArrayList<>(), -1L, -1L));
+            for (int clientIndex = 0; clientIndex < clients.size(); clientIndex++) {
+                final int clientId = clientIndex;
+                final SortClient client = clients.get(clientIndex);
+                CompletableFuture<Triple<Integer, Long, Long>> task = CompletableFuture.completedFuture(Triple.of(0, -1L, -1L));
 
                 for (int j = 0; j < requestCount; j++) {
                     final int currentRequest = j;
-                    task = task.thenApply(result ->
-                    {
-                        try {
-                            if (currentRequest != 0)
-                                Thread.sleep(currentTimeIntervalMs);
-                        } catch (InterruptedException ignored) {
-                        }
-                        return result;
-                    }).thenCompose(result -> {
+                    task = task.thenCompose(result -> delay(currentRequest == 0 ? 0 : currentTimeIntervalMs).thenApply(ignored -> result)).thenCompose(result -> {
                         // Some client receives all responses
                         if (firstFinished.get()) {
                             return CompletableFuture.completedFuture(result);
@@ -84,7 +194,16 @@ public class Benchmark {
 
                         final long maybeStartPoint = System.nanoTime();
 
-                        return client.sortArray(items).thenApply(listResponse -> {
+                        return sortArray(client, items).handle((listResponse, failure) -> {
+                            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                            if (cause != null && !(cause instanceof DeadlineExceededException)) {
+                                throw new CompletionException(cause);
+                            }
+                            if (cause != null) {
+                                timeouts.incrementAndGet();
+                            } else {
+                                clockOffsetEstimator.addSample(listResponse.getClockSample());
+                            }
                             if (currentRequest == 0) {
                                 countOfStartedClient.incrementAndGet();
                             }
@@ -102,52 +221,53 @@ public class Benchmark {
                                 // All clients not starts yet
                                 return result;
                             }
+                            if (listResponse == null) {
+                                // Expired, the time until the deadline is counted by the client side average only
+                                return Triple.of(result.getLeft() + 1, startPoint, System.nanoTime());
+                            }
 
-                            result.getLeft().add(TimeSpent.from(listResponse));
-                            return Triple.of(result.getLeft(), startPoint, System.nanoTime());
+                            try {
+                                store.append(pointIndex, clientId, listResponse.getClockSample(), listResponse.getProcessTimeRequest(),
+                                        listResponse.getProcessTimeClient(), listResponse.getPhaseTimes(), listResponse.getGcSample(), listResponse.getAlgorithm());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return Triple.of(result.getLeft() + 1, startPoint, System.nanoTime());
                         });
                     });
                 }
 
-                task = task.thenApply(listLongLongTriple -> {
-                    try {
-                        client.close();
-                    } catch (IOException ignored) {
-                    }
-                    return listLongLongTriple;
-                });
-
                 tasks.add(task);
             }
 
-            List<Triple<List<TimeSpent>, Long, Long>> triples = tasks.stream().map(CompletableFuture::join).collect(Collectors.toList());
-            Optional<Triple<List<TimeSpent>, Long, Long>> incorrect = triples.stream().filter(t -> t.getMiddle() == -1 && t.getRight() == -1).findFirst();
+            List<Triple<Integer, Long, Long>> triples = tasks.stream().map(CompletableFuture::join).collect(Collectors.toList());
+            for (SortClient connection : connections) {
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                }
+            }
+            Optional<Triple<Integer, Long, Long>> incorrect = triples.stream().filter(t -> t.getLeft() == 0).findFirst();
 
             if (incorrect.isPresent()) {
                 logger.log(Level.WARNING, "Incorrect result, skip point");
                 continue;
             }
 
-            OptionalDouble averageProcessTimeClient = triples.stream().map(Triple::getLeft).flatMap(List::stream).map(TimeSpent::getProcessTimeClient).mapToDouble(value -> value).average();
-            OptionalDouble averageProcessTimeRequest = triples.stream().map(Triple::getLeft).flatMap(List::stream).map(TimeSpent::getProcessTimeRequest).mapToDouble(value -> value).average();
             OptionalDouble averageTimeOnClientSide = triples.stream().map(
-                    t -> ((t.getRight() - t.getMiddle()) / 1000000.f - (t.getLeft().size() - 1) * currentTimeIntervalMs) / t.getLeft().size())
+                    t -> ((t.getRight() - t.getMiddle()) / 1000000.f - (t.getLeft() - 1) * currentTimeIntervalMs) / t.getLeft())
                     .mapToDouble(value -> value).average();
 
-            results.add(Point.of(currentElementCount, currentConcurrencyClient, currentTimeIntervalMs, averageProcessTimeRequest.orElse(-1), averageProcessTimeClient.orElse(-1), averageTimeOnClientSide.orElse(-1)));
+            final long sampleTo = store.size();
+            SampleSummary summary = SampleSummary.of(store, sampleFrom, sampleTo, clockOffsetEstimator.getOffset());
+
+            results.add(Point.of(currentElementCount, currentConcurrencyClient, currentTimeIntervalMs, summary.processTimeRequest, summary.processTimeClient,
+                    averageTimeOnClientSide.orElse(-1), summary.phaseTimes, summary.latencySplit, summary.pauseStats, summary.algorithm, sampleFrom, sampleTo, timeouts.get()));
         }
 
         return results;
     }
 
-    private ArrayList<Integer> getItems(int length) {
-        ArrayList<Integer> arrayList = new ArrayList<>(length);
-        for (int i = 0; i < length; i++) {
-            arrayList.add(i * 7 - 2020);
-        }
-        return arrayList;
-    }
-
     public static class Point {
         final public int elements;
         final public int clients;
@@ -155,18 +275,41 @@ public class Benchmark {
         final public double requestProcessTime;
         final public double clientProcessTime;
         final public double avgClientWaitingTime;
-
-        private Point(int elements, int clients, int interval, double requestProcessTime, double clientProcessTime, double avgClientWaitingTime) {
+        final public PhaseTimes phaseTimes;
+        final public LatencySplit latencySplit;
+        final public PauseStats pauseStats;
+        /**
+         * Sort algorithm reported by the server for most of the requests
+         */
+        final public String algorithm;
+        /**
+         * Range of the samples of the point in the sample store
+         */
+        final public long sampleFrom;
+        final public long sampleTo;
+        /**
+         * Number of requests which exceeded the timeout, including requests sent before all clients started
+         */
+        final public int timeouts;
+
+        private Point(int elements, int clients, int interval, double requestProcessTime, double clientProcessTime, double avgClientWaitingTime, PhaseTimes phaseTimes, LatencySplit latencySplit, PauseStats pauseStats, String algorithm, long sampleFrom, long sampleTo, int timeouts) {
             this.elements = elements;
             this.clients = clients;
             this.interval = interval;
             this.requestProcessTime = requestProcessTime;
             this.clientProcessTime = clientProcessTime;
             this.avgClientWaitingTime = avgClientWaitingTime;
+            this.phaseTimes = phaseTimes;
+            this.latencySplit = latencySplit;
+            this.pauseStats = pauseStats;
+            this.algorithm = algorithm;
+            this.sampleFrom = sampleFrom;
+            this.sampleTo = sampleTo;
+            this.timeouts = timeouts;
         }
 
-        static public Point of(int elements, int clients, int interval, double requestProcessTime, double clientProcessTime, double avgClientWaitingTime) {
-            return new Point(elements, clients, interval, requestProcessTime, clientProcessTime, avgClientWaitingTime);
+        static public Point of(int elements, int clients, int interval, double requestProcessTime, double clientProcessTime, double avgClientWaitingTime, PhaseTimes phaseTimes, LatencySplit latencySplit, PauseStats pauseStats, String algorithm, long sampleFrom, long sampleTo, int timeouts) {
+            return new Point(elements, clients, interval, requestProcessTime, clientProcessTime, avgClientWaitingTime, phaseTimes, latencySplit, pauseStats, algorithm, sampleFrom, sampleTo, timeouts);
         }
 
         public double getRequestProcessTime() {
@@ -180,27 +323,33 @@ public class Benchmark {
         public double getAvgClientWaitingTime() {
             return avgClientWaitingTime;
         }
-    }
 
-    private static class TimeSpent {
-        final float processTimeRequest;
-        final float processTimeClient;
+        public PhaseTimes getPhaseTimes() {
+            return phaseTimes;
+        }
+
+        public LatencySplit getLatencySplit() {
+            return latencySplit;
+        }
+
+        public PauseStats getPauseStats() {
+            return pauseStats;
+        }
 
-        TimeSpent(float processTimeRequest, float processTimeClient) {
-            this.processTimeRequest = processTimeRequest;
-            this.processTimeClient = processTimeClient;
+        public String getAlgorithm() {
+            return algorithm;
         }
 
-        static <T> TimeSpent from(Client.Response<T> response) {
-            return new TimeSpent(response.getProcessTimeRequest(), response.getProcessTimeClient());
+        public long getSampleFrom() {
+            return sampleFrom;
         }
 
-        public float getProcessTimeRequest() {
-            return processTimeRequest;
+        public long getSampleTo() {
+            return sampleTo;
         }
 
-        public float getProcessTimeClient() {
-            return processTimeClient;
+        public int getTimeouts() {
+            return timeouts;
         }
     }
 }
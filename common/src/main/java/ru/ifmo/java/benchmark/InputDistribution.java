@@ -0,0 +1,92 @@
+package ru.ifmo.java.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Shapes of arrays sent by {@link Benchmark}.
+ */
+public enum InputDistribution {
+    /**
+     * Distinct values in random order, the original workload
+     */
+    SHUFFLED {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            ArrayList<Integer> items = SORTED.generate(length, random);
+            Collections.shuffle(items, random);
+            return items;
+        }
+    },
+    SORTED {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            ArrayList<Integer> items = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                items.add(value(i));
+            }
+            return items;
+        }
+    },
+    REVERSED {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            ArrayList<Integer> items = SORTED.generate(length, random);
+            Collections.reverse(items);
+            return items;
+        }
+    },
+    /**
+     * Sorted with a few random swaps
+     */
+    NEARLY_SORTED {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            ArrayList<Integer> items = SORTED.generate(length, random);
+            for (int i = 0; i < length / 100 + 1 && length > 1; i++) {
+                Collections.swap(items, random.nextInt(length), random.nextInt(length));
+            }
+            return items;
+        }
+    },
+    FEW_UNIQUE {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            ArrayList<Integer> items = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                items.add(value(random.nextInt(FEW_UNIQUE_VALUES)));
+            }
+            return items;
+        }
+    },
+    /**
+     * Value of rank {@code k} appears with probability proportional to {@code 1 / k}
+     */
+    ZIPF {
+        @Override
+        public ArrayList<Integer> generate(int length, Random random) {
+            double[] cumulative = new double[Math.max(length, 1)];
+            double sum = 0;
+            for (int k = 0; k < cumulative.length; k++) {
+                sum += 1.0 / (k + 1);
+                cumulative[k] = sum;
+            }
+            ArrayList<Integer> items = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                items.add(value(rank < 0 ? -rank - 1 : rank));
+            }
+            return items;
+        }
+    };
+
+    private static final int FEW_UNIQUE_VALUES = 8;
+
+    private static int value(int i) {
+        return i * 7 - 2020;
+    }
+
+    public abstract ArrayList<Integer> generate(int length, Random random);
+}
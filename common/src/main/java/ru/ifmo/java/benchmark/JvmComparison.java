@@ -0,0 +1,86 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.launcher.GcLogSummary;
+import ru.ifmo.java.benchmark.launcher.JvmOptions;
+import ru.ifmo.java.benchmark.launcher.ServerProcess;
+import ru.ifmo.java.benchmark.server.Server;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the same benchmark against servers forked with each JVM configuration, one process per architecture and configuration.
+ * Configurations which the JVM does not support are skipped.
+ */
+public class JvmComparison {
+    protected final Logger logger = Logger.getLogger(JvmComparison.class.getName());
+    final private String host;
+    final private int port;
+    final private Path workDirectory;
+
+    /**
+     * @param workDirectory directory of GC logs and outputs of the server processes
+     */
+    public JvmComparison(String host, int port, Path workDirectory) {
+        this.host = host;
+        this.port = port;
+        this.workDirectory = workDirectory;
+    }
+
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, Map<String, JvmOptions> configurations, int threads,
+                                int requestCount, List<Integer> elementCounts, List<Integer> concurrencyClientCounts, List<Integer> timeIntervalsMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            for (Map.Entry<String, JvmOptions> configuration : configurations.entrySet()) {
+                ServerProcess server;
+                try {
+                    server = ServerProcess.start(serverType, host, port, threads, configuration.getValue(), workDirectory);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Skip " + configuration.getKey() + ": " + e.getMessage());
+                    continue;
+                }
+                List<Benchmark.Point> points;
+                try {
+                    Benchmark benchmark = new Benchmark(host, port);
+                    benchmark.warmUp();
+                    points = benchmark.evaluate(requestCount, elementCounts, concurrencyClientCounts, timeIntervalsMs);
+                } finally {
+                    server.close();
+                }
+                results.add(new Result(serverType, configuration.getKey(), points, server.getGcSummary()));
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,%s,%d,%d,%d,%f,%f,%f,%d,%f,%f",
+                        result.serverType, result.configuration, p.clients, p.elements, p.interval, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime,
+                        result.gc.pauses, result.gc.totalPauseTime, result.gc.maxPauseTime)))
+                .collect(Collectors.joining("\n", "architecture,configuration,clients,elements,interval,requestProcessTime,clientProcessTime,responseTime," +
+                        "gcPauses,gcPauseTime,gcMaxPause\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public String configuration;
+        final public List<Benchmark.Point> points;
+        // Pauses of the whole run of the server process
+        final public GcLogSummary gc;
+
+        Result(Server.ServerType serverType, String configuration, List<Benchmark.Point> points, GcLogSummary gc) {
+            this.serverType = serverType;
+            this.configuration = configuration;
+            this.points = points;
+            this.gc = gc;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.affinity.ThreadPlacement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the same benchmark against in-process servers of each architecture started with each thread placement,
+ * e.g. unpinned and pinned threads. Every result reports the placement and the number of threads which were pinned.
+ */
+public class PlacementComparison {
+    final private String host;
+    final private int port;
+
+    public PlacementComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param config configuration of the servers, its thread placement is replaced by each of {@code placements}
+     */
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, Collection<ThreadPlacement> placements, ServerConfig config,
+                                int requestCount, List<Integer> elementCounts, List<Integer> concurrencyClientCounts, List<Integer> timeIntervalsMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            for (ThreadPlacement placement : placements) {
+                long pinnedBefore = placement.getPinnedThreads();
+                Server server = Server.create(host, port, config.setThreadPlacement(placement), serverType);
+                CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+                try {
+                    Benchmark benchmark = new Benchmark(host, port, config.getSocketOptions());
+                    benchmark.warmUp();
+                    List<Benchmark.Point> points = benchmark.evaluate(requestCount, elementCounts, concurrencyClientCounts, timeIntervalsMs);
+                    results.add(new Result(serverType, placement.toString(), placement.getPinnedThreads() - pinnedBefore, points));
+                } finally {
+                    server.close();
+                    serverWorker.join();
+                }
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,\"%s\",%d,%d,%d,%d,%f,%f,%f",
+                        result.serverType, result.placement, result.pinnedThreads, p.clients, p.elements, p.interval,
+                        p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime)))
+                .collect(Collectors.joining("\n", "architecture,placement,pinnedThreads,clients,elements,interval,requestProcessTime,clientProcessTime,responseTime\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public String placement;
+        /**
+         * Threads of the server pinned to CPUs, zero if the placement is unpinned or pinning is not supported
+         */
+        final public long pinnedThreads;
+        final public List<Benchmark.Point> points;
+
+        Result(Server.ServerType serverType, String placement, long pinnedThreads, List<Benchmark.Point> points) {
+            this.serverType = serverType;
+            this.placement = placement;
+            this.pinnedThreads = pinnedThreads;
+            this.points = points;
+        }
+    }
+}
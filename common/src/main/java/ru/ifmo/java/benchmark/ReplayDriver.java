@@ -0,0 +1,199 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.client.ClockOffsetEstimator;
+import ru.ifmo.java.benchmark.client.SortClient;
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.results.SampleStore;
+import ru.ifmo.java.benchmark.results.SampleSummary;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.trace.TraceEvent;
+import ru.ifmo.java.benchmark.trace.TraceReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a trace recorded by a server open-loop: every request is submitted at its recorded time
+ * regardless of responses to the previous ones, so response times include queueing behind slow requests.
+ * A connection of the trace is replayed by its own client, arrays are generated from the recorded size and payload id,
+ * so equal payloads of the trace are equal in the replay.
+ */
+public class ReplayDriver {
+    final private String host;
+    final private int port;
+    final private SocketOptions socketOptions;
+    final private ClockOffsetEstimator clockOffsetEstimator = new ClockOffsetEstimator();
+    private double timeScale = 1;
+    private InputDistribution inputDistribution = InputDistribution.SHUFFLED;
+    private SampleStore sampleStore;
+    private ClientEngine clientEngine = ClientEngine.BLOCKING;
+
+    public ReplayDriver(String host, int port, SocketOptions socketOptions) {
+        this.host = host;
+        this.port = port;
+        this.socketOptions = socketOptions;
+    }
+
+    public ReplayDriver(String host, int port) {
+        this(host, port, new SocketOptions());
+    }
+
+    /**
+     * Speed of the replay relative to the trace, 2 replays the trace twice as fast
+     */
+    public ReplayDriver setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
+        return this;
+    }
+
+    public ReplayDriver setInputDistribution(InputDistribution inputDistribution) {
+        this.inputDistribution = inputDistribution;
+        return this;
+    }
+
+    public ReplayDriver setClientEngine(ClientEngine clientEngine) {
+        this.clientEngine = clientEngine;
+        return this;
+    }
+
+    public ReplayDriver setSampleStore(SampleStore sampleStore) {
+        this.sampleStore = sampleStore;
+        return this;
+    }
+
+    public SampleStore getSampleStore() throws IOException {
+        if (sampleStore == null) {
+            sampleStore = SampleStore.createTemporary(0);
+        }
+        return sampleStore;
+    }
+
+    public Result replay(Path trace) throws IOException {
+        final SampleStore store = getSampleStore();
+        final long sampleFrom = store.size();
+        final Map<Integer, SortClient> clients = new HashMap<>();
+        final AtomicLong failed = new AtomicLong();
+        // One for the dispatch loop, so the count reaches zero only after the last request is submitted
+        final AtomicLong inFlight = new AtomicLong(1);
+        final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+        long requests = 0;
+        long maxLag = 0;
+        long firstTime = -1;
+        long startTime = System.nanoTime();
+        try (TraceReader reader = new TraceReader(trace)) {
+            for (TraceEvent event = reader.next(); event != null; event = reader.next()) {
+                if (firstTime == -1) {
+                    firstTime = event.time;
+                }
+                List<Integer> items = inputDistribution.generate(event.items, new Random(event.payloadId));
+                SortClient client = clients.get(event.connection);
+                if (client == null) {
+                    client = clientEngine.connect(host, port, socketOptions);
+                    clients.put(event.connection, client);
+                }
+
+                long dueTime = startTime + (long) ((event.time - firstTime) / timeScale);
+                long delay;
+                while ((delay = dueTime - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                // The driver could not keep up with the trace
+                maxLag = Math.max(maxLag, -delay);
+
+                final int connection = event.connection;
+                inFlight.incrementAndGet();
+                requests++;
+                client.sortArray(items).whenComplete((response, e) -> {
+                    if (e == null) {
+                        clockOffsetEstimator.addSample(response.getClockSample());
+                        try {
+                            store.append(0, connection, response.getClockSample(), response.getProcessTimeRequest(),
+                                    response.getProcessTimeClient(), response.getPhaseTimes(), response.getGcSample(), response.getAlgorithm());
+                        } catch (IOException ioException) {
+                            throw new UncheckedIOException(ioException);
+                        }
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    if (inFlight.decrementAndGet() == 0) {
+                        drained.complete(null);
+                    }
+                });
+            }
+        } finally {
+            if (inFlight.decrementAndGet() == 0) {
+                drained.complete(null);
+            }
+            drained.join();
+            for (SortClient client : clients.values()) {
+                client.close();
+            }
+        }
+        long duration = System.nanoTime() - startTime;
+
+        long sampleTo = store.size();
+        return new Result(requests, failed.get(), duration / 1000000., maxLag / 1000000., sampleFrom, sampleTo,
+                SampleSummary.of(store, sampleFrom, sampleTo, clockOffsetEstimator.getOffset()));
+    }
+
+    /**
+     * Replays the trace against in-process servers of each architecture started with the same config.
+     */
+    public static Map<Server.ServerType, Result> compare(String host, int port, Collection<Server.ServerType> serverTypes, ServerConfig config, Path trace, double timeScale) throws IOException {
+        Map<Server.ServerType, Result> results = new LinkedHashMap<>();
+        for (Server.ServerType serverType : serverTypes) {
+            Server server = Server.create(host, port, config, serverType);
+            CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+            try {
+                results.put(serverType, new ReplayDriver(host, port, config.getSocketOptions()).setTimeScale(timeScale).replay(trace));
+            } finally {
+                server.close();
+                serverWorker.join();
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(Map<Server.ServerType, Result> results) {
+        return results.entrySet().stream()
+                .map(e -> String.format("%s,%d,%d,%f,%f,%f,%f,%f", e.getKey(), e.getValue().requests, e.getValue().failed, e.getValue().duration, e.getValue().maxLag,
+                        e.getValue().summary.processTimeRequest, e.getValue().summary.processTimeClient, e.getValue().summary.latencySplit.responseTime))
+                .collect(Collectors.joining("\n", "architecture,requests,failed,duration,maxLag,requestProcessTime,clientProcessTime,responseTime\n", ""));
+    }
+
+    public static class Result {
+        final public long requests;
+        final public long failed;
+        // Milliseconds
+        final public double duration;
+        // Largest delay of a submission behind the trace in milliseconds, the replay is not faithful if it is large
+        final public double maxLag;
+        final public long sampleFrom;
+        final public long sampleTo;
+        final public SampleSummary summary;
+
+        Result(long requests, long failed, double duration, double maxLag, long sampleFrom, long sampleTo, SampleSummary summary) {
+            this.requests = requests;
+            this.failed = failed;
+            this.duration = duration;
+            this.maxLag = maxLag;
+            this.sampleFrom = sampleFrom;
+            this.sampleTo = sampleTo;
+            this.summary = summary;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Saturates in-process servers of each architecture: many clients share a few multiplexed connections and send
+ * requests without intervals, so every connection has more requests in flight than the server processes at once.
+ * Response times are reported with the peaks of the worker queue, of the buffered frames and of the connections
+ * stopped by backpressure, sampled during the run.
+ */
+public class SaturationComparison {
+    private static final long SAMPLE_INTERVAL_MS = 10;
+
+    final private String host;
+    final private int port;
+    private int clients = 64;
+    private int connections = 4;
+    private int elements = 2000;
+    private int requestCount = 20;
+
+    public SaturationComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 64 clients over 4 connections sending 20 arrays of 2000 items each by default
+     */
+    public SaturationComparison setLoad(int clients, int connections, int elements, int requestCount) {
+        this.clients = clients;
+        this.connections = connections;
+        this.elements = elements;
+        this.requestCount = requestCount;
+        return this;
+    }
+
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, ServerConfig config) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            Server server = Server.create(host, port, config, serverType);
+            CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            try {
+                ServerMetrics metrics = server.getMetrics();
+                AtomicLong maxQueueLength = new AtomicLong();
+                AtomicLong maxMemoryUsed = new AtomicLong();
+                AtomicLong maxBackpressured = new AtomicLong();
+                sampler.scheduleAtFixedRate(() -> {
+                    maxQueueLength.accumulateAndGet(metrics.getWorkerQueueLength(), Math::max);
+                    maxMemoryUsed.accumulateAndGet(metrics.getMemoryUsedBytes(), Math::max);
+                    maxBackpressured.accumulateAndGet(metrics.getBackpressuredConnections(), Math::max);
+                }, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+                Benchmark benchmark = new Benchmark(host, port, config.getSocketOptions())
+                        .setClientEngine(ClientEngine.MULTIPLEXED)
+                        .setMultiplexedConnections(connections);
+                benchmark.warmUp();
+                List<Benchmark.Point> points = benchmark.evaluate(requestCount, Collections.singletonList(elements),
+                        Collections.singletonList(clients), Collections.singletonList(0));
+                results.add(new Result(serverType, points, maxQueueLength.get(), maxMemoryUsed.get(), maxBackpressured.get()));
+            } finally {
+                sampler.shutdownNow();
+                server.close();
+                serverWorker.join();
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,%d,%d,%f,%f,%f,%d,%d,%d",
+                        result.serverType, p.clients, p.elements, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime,
+                        result.maxQueueLength, result.maxMemoryUsedBytes, result.maxBackpressuredConnections)))
+                .collect(Collectors.joining("\n", "architecture,clients,elements,requestProcessTime,clientProcessTime,responseTime," +
+                        "maxQueueLength,maxMemoryUsedBytes,maxBackpressuredConnections\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public List<Benchmark.Point> points;
+        final public long maxQueueLength;
+        /**
+         * Peak of the frames buffered by the server, bytes
+         */
+        final public long maxMemoryUsedBytes;
+        final public long maxBackpressuredConnections;
+
+        Result(Server.ServerType serverType, List<Benchmark.Point> points, long maxQueueLength, long maxMemoryUsedBytes, long maxBackpressuredConnections) {
+            this.serverType = serverType;
+            this.points = points;
+            this.maxQueueLength = maxQueueLength;
+            this.maxMemoryUsedBytes = maxMemoryUsedBytes;
+            this.maxBackpressuredConnections = maxBackpressuredConnections;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.client.Client;
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.client.SortClient;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.metrics.Histogram;
+import ru.ifmo.java.benchmark.server.schedule.SchedulingPolicy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a mixed-size load against in-process servers started with each scheduling policy:
+ * a few clients send large arrays back to back while the others send small arrays with an interval,
+ * response times of small and large requests are reported separately.
+ */
+public class SchedulingComparison {
+    final private String host;
+    final private int port;
+    final private Random random = new Random();
+    private int largeClients = 2;
+    private int largeElements = 20000;
+    private int smallClients = 8;
+    private int smallElements = 100;
+    private int smallRequests = 50;
+    private int smallIntervalMs = 10;
+    private int smallPriority = 0;
+
+    public SchedulingComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Clients sending large arrays without intervals and clients sending small arrays, 2 x 20000 and 8 x 100 by default
+     */
+    public SchedulingComparison setLoad(int largeClients, int largeElements, int smallClients, int smallElements) {
+        this.largeClients = largeClients;
+        this.largeElements = largeElements;
+        this.smallClients = smallClients;
+        this.smallElements = smallElements;
+        return this;
+    }
+
+    /**
+     * Requests of every small client and the interval between them, the run is over when small clients are done
+     */
+    public SchedulingComparison setSmallRequests(int smallRequests, int smallIntervalMs) {
+        this.smallRequests = smallRequests;
+        this.smallIntervalMs = smallIntervalMs;
+        return this;
+    }
+
+    /**
+     * Priority class of small requests, the same as of large ones by default
+     */
+    public SchedulingComparison setSmallPriority(int smallPriority) {
+        this.smallPriority = smallPriority;
+        return this;
+    }
+
+    /**
+     * @param config configuration of the servers, its scheduling policy is replaced by each of {@code policies}
+     */
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, Collection<SchedulingPolicy> policies, ServerConfig config) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            for (SchedulingPolicy policy : policies) {
+                Server server = Server.create(host, port, config.setSchedulingPolicy(policy), serverType);
+                CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+                try {
+                    results.add(run(serverType, policy, server, config.getSocketOptions()));
+                } finally {
+                    server.close();
+                    serverWorker.join();
+                }
+            }
+        }
+        return results;
+    }
+
+    private Result run(Server.ServerType serverType, SchedulingPolicy policy, Server server, SocketOptions socketOptions) throws IOException {
+        Histogram small = new Histogram();
+        Histogram large = new Histogram();
+        AtomicBoolean smallDone = new AtomicBoolean(false);
+        List<SortClient> clients = new ArrayList<>();
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            List<CompletableFuture<Void>> largeTasks = new ArrayList<>();
+            for (int i = 0; i < largeClients; i++) {
+                SortClient client = ClientEngine.ASYNC.connect(host, port, socketOptions);
+                clients.add(client);
+                List<Integer> items = InputDistribution.SHUFFLED.generate(largeElements, random);
+                largeTasks.add(CompletableFuture.runAsync(() -> {
+                    while (!smallDone.get()) {
+                        record(large, client.sortArray(items).join());
+                    }
+                }, threads));
+            }
+
+            List<CompletableFuture<Void>> smallTasks = new ArrayList<>();
+            for (int i = 0; i < smallClients; i++) {
+                SortClient client = ClientEngine.ASYNC.connect(host, port, socketOptions).setPriority(smallPriority);
+                clients.add(client);
+                List<Integer> items = InputDistribution.SHUFFLED.generate(smallElements, random);
+                smallTasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        for (int j = 0; j < smallRequests; j++) {
+                            record(small, client.sortArray(items).join());
+                            Thread.sleep(smallIntervalMs);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, threads));
+            }
+
+            smallTasks.forEach(CompletableFuture::join);
+            smallDone.set(true);
+            largeTasks.forEach(CompletableFuture::join);
+        } finally {
+            threads.shutdown();
+            for (SortClient client : clients) {
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return new Result(serverType, policy, small.snapshot(), large.snapshot(), server.getMetrics().getRateLimitedRequests());
+    }
+
+    private static void record(Histogram histogram, Client.Response<List<Integer>> response) {
+        histogram.record(response.getClockSample().clientReceiveTime - response.getClockSample().clientSubmitTime);
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .map(r -> String.format("%s,%s,%d,%f,%f,%f,%d,%f,%f,%d",
+                        r.serverType, r.policy, r.small.getCount(), r.small.getMean(), r.small.getP50(), r.small.getP99(),
+                        r.large.getCount(), r.large.getMean(), r.large.getP99(), r.rateLimited))
+                .collect(Collectors.joining("\n", "architecture,policy,smallRequests,smallMean,smallP50,smallP99,largeRequests,largeMean,largeP99,rateLimited\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public SchedulingPolicy policy;
+        /**
+         * Response times of small and large requests, ms
+         */
+        final public Histogram.Snapshot small;
+        final public Histogram.Snapshot large;
+        final public long rateLimited;
+
+        Result(Server.ServerType serverType, SchedulingPolicy policy, Histogram.Snapshot small, Histogram.Snapshot large, long rateLimited) {
+            this.serverType = serverType;
+            this.policy = policy;
+            this.small = small;
+            this.large = large;
+            this.rateLimited = rateLimited;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the same benchmark against in-process servers started with each socket options configuration.
+ * Client sockets of the benchmark use the same configuration as the server.
+ */
+public class SocketOptionsComparison {
+    final private String host;
+    final private int port;
+
+    public SocketOptionsComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, Map<String, SocketOptions> configurations, int threads,
+                                int requestCount, List<Integer> elementCounts, List<Integer> concurrencyClientCounts, List<Integer> timeIntervalsMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            for (Map.Entry<String, SocketOptions> configuration : configurations.entrySet()) {
+                Server server = Server.create(host, port, new ServerConfig().setThreads(threads).setSocketOptions(configuration.getValue()), serverType);
+                CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+                try {
+                    Benchmark benchmark = new Benchmark(host, port, configuration.getValue());
+                    benchmark.warmUp();
+                    results.add(new Result(serverType, configuration.getKey(), benchmark.evaluate(requestCount, elementCounts, concurrencyClientCounts, timeIntervalsMs)));
+                } finally {
+                    server.close();
+                    serverWorker.join();
+                }
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,%s,%d,%d,%d,%f,%f,%f",
+                        result.serverType, result.configuration, p.clients, p.elements, p.interval, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime)))
+                .collect(Collectors.joining("\n", "architecture,configuration,clients,elements,interval,requestProcessTime,clientProcessTime,responseTime\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public String configuration;
+        final public List<Benchmark.Point> points;
+
+        Result(Server.ServerType serverType, String configuration, List<Benchmark.Point> points) {
+            this.serverType = serverType;
+            this.configuration = configuration;
+            this.points = points;
+        }
+    }
+}
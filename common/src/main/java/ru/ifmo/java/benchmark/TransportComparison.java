@@ -0,0 +1,78 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.nonblocking.Transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the same benchmark against in-process non-blocking servers started with each transport,
+ * selector loop iterations per request show how many wakeups a transport needs, wakeups of the selectors by
+ * other threads per second show the cost of the handoffs between threads.
+ */
+public class TransportComparison {
+    final private String host;
+    final private int port;
+
+    public TransportComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param config configuration of the servers, its transport is replaced by each of {@code transports}
+     */
+    public List<Result> compare(Collection<Transport> transports, ServerConfig config,
+                                int requestCount, List<Integer> elementCounts, List<Integer> concurrencyClientCounts, List<Integer> timeIntervalsMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Transport transport : transports) {
+            Server server = Server.create(host, port, config.setTransport(transport), Server.ServerType.NON_BLOCKING);
+            CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+            try {
+                long beginTime = System.nanoTime();
+                Benchmark benchmark = new Benchmark(host, port, config.getSocketOptions());
+                benchmark.warmUp();
+                List<Benchmark.Point> points = benchmark.evaluate(requestCount, elementCounts, concurrencyClientCounts, timeIntervalsMs);
+                double seconds = (System.nanoTime() - beginTime) / 1e9;
+                results.add(new Result(transport.getName(), points,
+                        (double) server.getMetrics().getSelectorLoopIterations() / Math.max(1, server.getMetrics().getProcessTime().getCount()),
+                        server.getMetrics().getSelectorWakeups() / seconds));
+            } finally {
+                server.close();
+                serverWorker.join();
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,%d,%d,%d,%f,%f,%f,%f,%f",
+                        result.transport, p.clients, p.elements, p.interval, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime,
+                        result.selectorIterationsPerRequest, result.selectorWakeupsPerSecond)))
+                .collect(Collectors.joining("\n", "transport,clients,elements,interval,requestProcessTime,clientProcessTime,responseTime,selectorIterationsPerRequest,selectorWakeupsPerSecond\n", ""));
+    }
+
+    public static class Result {
+        final public String transport;
+        final public List<Benchmark.Point> points;
+        /**
+         * Over the whole run including the warm up
+         */
+        final public double selectorIterationsPerRequest;
+        final public double selectorWakeupsPerSecond;
+
+        Result(String transport, List<Benchmark.Point> points, double selectorIterationsPerRequest, double selectorWakeupsPerSecond) {
+            this.transport = transport;
+            this.points = points;
+            this.selectorIterationsPerRequest = selectorIterationsPerRequest;
+            this.selectorWakeupsPerSecond = selectorWakeupsPerSecond;
+        }
+    }
+}
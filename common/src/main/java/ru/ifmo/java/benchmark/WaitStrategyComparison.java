@@ -0,0 +1,80 @@
+package ru.ifmo.java.benchmark;
+
+import ru.ifmo.java.benchmark.jvm.ProcessCpu;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the same benchmark against in-process servers of each architecture started with each wait strategy,
+ * response times are reported with the CPU the process used meanwhile, so the latency gain of spinning
+ * can be weighed against its cost. Clients run in the same process, their share of the CPU does not depend on the strategy.
+ */
+public class WaitStrategyComparison {
+    final private String host;
+    final private int port;
+
+    public WaitStrategyComparison(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param config configuration of the servers, its wait strategy is replaced by each of {@code strategies}
+     */
+    public List<Result> compare(Collection<Server.ServerType> serverTypes, Collection<WaitStrategy> strategies, ServerConfig config,
+                                int requestCount, List<Integer> elementCounts, List<Integer> concurrencyClientCounts, List<Integer> timeIntervalsMs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        for (Server.ServerType serverType : serverTypes) {
+            for (WaitStrategy strategy : strategies) {
+                Server server = Server.create(host, port, config.setWaitStrategy(strategy), serverType);
+                CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+                try {
+                    Benchmark benchmark = new Benchmark(host, port, config.getSocketOptions());
+                    benchmark.warmUp();
+                    long beginTime = System.nanoTime();
+                    long beginCpu = ProcessCpu.nanos();
+                    List<Benchmark.Point> points = benchmark.evaluate(requestCount, elementCounts, concurrencyClientCounts, timeIntervalsMs);
+                    double cpuCores = (double) (ProcessCpu.nanos() - beginCpu) / (System.nanoTime() - beginTime);
+                    results.add(new Result(serverType, strategy, points, cpuCores));
+                } finally {
+                    server.close();
+                    serverWorker.join();
+                }
+            }
+        }
+        return results;
+    }
+
+    public static String toCsv(List<Result> results) {
+        return results.stream()
+                .flatMap(result -> result.points.stream().map(p -> String.format("%s,%s,%d,%d,%d,%f,%f,%f,%f",
+                        result.serverType, result.waitStrategy, p.clients, p.elements, p.interval,
+                        p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime, result.cpuCores)))
+                .collect(Collectors.joining("\n", "architecture,waitStrategy,clients,elements,interval,requestProcessTime,clientProcessTime,responseTime,cpuCores\n", ""));
+    }
+
+    public static class Result {
+        final public Server.ServerType serverType;
+        final public WaitStrategy waitStrategy;
+        final public List<Benchmark.Point> points;
+        /**
+         * Average number of CPUs the process used during the run without the warm up
+         */
+        final public double cpuCores;
+
+        Result(Server.ServerType serverType, WaitStrategy waitStrategy, List<Benchmark.Point> points, double cpuCores) {
+            this.serverType = serverType;
+            this.waitStrategy = waitStrategy;
+            this.points = points;
+            this.cpuCores = cpuCores;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ru.ifmo.java.benchmark.client;
+
+import ru.ifmo.java.benchmark.jvm.GcPauses;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Client on an {@link AsynchronousSocketChannel}, futures are completed by I/O callbacks,
+ * so the number of threads does not grow with the number of connections.
+ * Callbacks run in the threads of the channel group and must not block.
+ */
+public class AsyncClient implements SortClient {
+    private static AsynchronousChannelGroup sharedGroup;
+
+    private final AsynchronousSocketChannel channel;
+    private volatile int priority = 0;
+    private volatile long timeoutMs = 0;
+    // Completed when the last submitted exchange is over
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    public AsyncClient(String serverHost, int serverPort, SocketOptions socketOptions, AsynchronousChannelGroup group) throws IOException {
+        // Pauses are recorded from now on
+        GcPauses.get();
+        channel = connect(serverHost, serverPort, socketOptions, group);
+    }
+
+    /**
+     * Uses the group shared by all clients of the process with a thread per CPU
+     */
+    public AsyncClient(String serverHost, int serverPort, SocketOptions socketOptions) throws IOException {
+        this(serverHost, serverPort, socketOptions, sharedGroup());
+    }
+
+    public AsyncClient(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, new SocketOptions());
+    }
+
+    static AsynchronousSocketChannel connect(String serverHost, int serverPort, SocketOptions socketOptions, AsynchronousChannelGroup group) throws IOException {
+        AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+        try {
+            socketOptions.applyTo(channel);
+            channel.connect(new InetSocketAddress(serverHost, serverPort)).get();
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return channel;
+    }
+
+    static synchronized AsynchronousChannelGroup sharedGroup() throws IOException {
+        if (sharedGroup == null) {
+            sharedGroup = AsynchronousChannelGroup.withFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedGroup;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public SortClient setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public SortClient setTimeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Client.Response<List<Integer>>> sortArray(List<Integer> array) {
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        Protocol.SortArrayRequest sortArrayRequest = Protocol.SortArrayRequest.newBuilder()
+                .setData(Protocol.Array.newBuilder()
+                        .addAllItem(array)
+                        .build())
+                .build();
+
+        return enqueue(() -> {
+            long clientSendTime = System.nanoTime();
+            long timeoutMicros;
+            try {
+                timeoutMicros = Client.remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime);
+            } catch (DeadlineExceededException e) {
+                return failed(e);
+            }
+            return write(channel, Client.frame(Protocol.Request.newBuilder()
+                    .setSortArrayRequest(sortArrayRequest)
+                    .setClientSendTime(clientSendTime)
+                    .setPriority(priority)
+                    .setTimeoutMicros(timeoutMicros)
+                    .build()))
+                    .thenCompose(ignored -> receiveResponse(channel))
+                    .thenApply(response -> {
+                        long clientReceiveTime = System.nanoTime();
+                        checkDeadline(response, timeoutMs, clientSubmitTime, clientReceiveTime);
+                        return new Client.Response<>(response.getSortArrayResponse().getData().getItemList(), response.getProcessTimeRequest(), response.getProcessTimeClient(),
+                                PhaseTimes.from(response.getTimings()),
+                                new ClockSample(clientSubmitTime, clientSendTime, response.getServerReceiveTime(), response.getServerSendTime(), clientReceiveTime),
+                                Client.gcSample(response, clientSubmitTime, clientReceiveTime), response.getSortArrayResponse().getAlgorithm());
+                    });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Client.Response<List<Integer>>> sortArrayStreaming(List<Integer> array, int chunkSize) {
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        final int chunkCount = Math.max(1, (array.size() + chunkSize - 1) / chunkSize);
+
+        return enqueue(() -> {
+            long clientSendTime = System.nanoTime();
+            long timeoutMicros;
+            try {
+                timeoutMicros = Client.remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime);
+            } catch (DeadlineExceededException e) {
+                return failed(e);
+            }
+            CompletableFuture<Void> sent = CompletableFuture.completedFuture(null);
+            for (int i = 0; i < chunkCount; i++) {
+                final int chunkIndex = i;
+                sent = sent.thenCompose(ignored -> {
+                    boolean last = chunkIndex == chunkCount - 1;
+                    Protocol.SortArrayChunk.Builder chunk = Protocol.SortArrayChunk.newBuilder()
+                            .setData(Protocol.Array.newBuilder()
+                                    .addAllItem(array.subList(chunkIndex * chunkSize, last ? array.size() : (chunkIndex + 1) * chunkSize))
+                                    .build())
+                            .setLast(last);
+                    if (last) {
+                        chunk.setChunkCount(chunkCount);
+                    }
+                    return write(channel, Client.frame(Protocol.Request.newBuilder()
+                            .setSortArrayChunk(chunk)
+                            .setClientSendTime(clientSendTime)
+                            .setPriority(priority)
+                            .setTimeoutMicros(timeoutMicros)
+                            .build()));
+                });
+            }
+
+            return sent.thenCompose(ignored -> receiveResponse(channel)).thenCompose(first -> {
+                long clientReceiveTime = System.nanoTime();
+                List<Integer> body = new ArrayList<>(array.size());
+                return receiveChunks(body, first).thenApply(ignored -> {
+                    checkDeadline(first, timeoutMs, clientSubmitTime, System.nanoTime());
+                    return new Client.Response<>(body, first.getProcessTimeRequest(), first.getProcessTimeClient(),
+                            PhaseTimes.from(first.getTimings()),
+                            new ClockSample(clientSubmitTime, clientSendTime, first.getServerReceiveTime(), first.getServerSendTime(), clientReceiveTime),
+                            Client.gcSample(first, clientSubmitTime, clientReceiveTime), "");
+                });
+            });
+        });
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    /**
+     * {@link Client#checkDeadline} for callbacks of futures
+     */
+    static void checkDeadline(Protocol.Response response, long timeoutMs, long clientSubmitTime, long clientReceiveTime) {
+        try {
+            Client.checkDeadline(response, timeoutMs, clientSubmitTime, clientReceiveTime);
+        } catch (DeadlineExceededException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Starts the exchange when the previous one is over, whether it succeeded or not.
+     */
+    private synchronized <T> CompletableFuture<T> enqueue(Supplier<CompletableFuture<T>> exchange) {
+        CompletableFuture<T> result = tail.handle((ignored, e) -> null).thenCompose(ignored -> exchange.get());
+        tail = result;
+        return result;
+    }
+
+    private CompletableFuture<Void> receiveChunks(List<Integer> body, Protocol.Response response) {
+        body.addAll(response.getSortArrayChunk().getData().getItemList());
+        if (response.getSortArrayChunk().getLast()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return receiveResponse(channel).thenCompose(next -> receiveChunks(body, next));
+    }
+
+    static CompletableFuture<Protocol.Response> receiveResponse(AsynchronousSocketChannel channel) {
+        return read(channel, ByteBuffer.allocate(4))
+                .thenCompose(prefix -> read(channel, ByteBuffer.allocate(prefix.getInt())))
+                .thenApply(message -> {
+                    try {
+                        return Protocol.Response.parseFrom(message);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    static CompletableFuture<Void> write(AsynchronousSocketChannel channel, ByteBuffer buffer) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        channel.write(buffer, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, null, this);
+                } else {
+                    written.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                written.completeExceptionally(exc);
+            }
+        });
+        return written;
+    }
+
+    /**
+     * @return the buffer filled and flipped
+     */
+    private static CompletableFuture<ByteBuffer> read(AsynchronousSocketChannel channel, ByteBuffer buffer) {
+        CompletableFuture<ByteBuffer> read = new CompletableFuture<>();
+        if (!buffer.hasRemaining()) {
+            buffer.flip();
+            read.complete(buffer);
+            return read;
+        }
+        channel.read(buffer, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (result == -1) {
+                    read.completeExceptionally(new EOFException("Connection is closed by the server"));
+                } else if (buffer.hasRemaining()) {
+                    channel.read(buffer, null, this);
+                } else {
+                    buffer.flip();
+                    read.complete(buffer);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                read.completeExceptionally(exc);
+            }
+        });
+        return read;
+    }
+}
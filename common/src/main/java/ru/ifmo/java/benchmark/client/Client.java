@@ -1,67 +1,191 @@
 package ru.ifmo.java.benchmark.client;
 
+import ru.ifmo.java.benchmark.jvm.GcPauses;
+import ru.ifmo.java.benchmark.net.SocketOptions;
 import ru.ifmo.java.benchmark.protocol.Protocol;
 import ru.ifmo.java.benchmark.protocol.ProtocolUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-public class Client {
+public class Client implements SortClient {
     final private Socket socket;
     final private InputStream inputStream;
     final private OutputStream outputStream;
 
     final private ExecutorService singleExecutorService = Executors.newSingleThreadExecutor();
-
-    public Client(String serverHost, int serverPort) throws IOException {
-        socket = new Socket(serverHost, serverPort);
+    private volatile int priority = 0;
+    private volatile long timeoutMs = 0;
+
+    public Client(String serverHost, int serverPort, SocketOptions socketOptions) throws IOException {
+        // Pauses are recorded from now on
+        GcPauses.get();
+        socket = new Socket();
+        socketOptions.applyTo(socket);
+        socket.connect(new InetSocketAddress(serverHost, serverPort));
         inputStream = socket.getInputStream();
         outputStream = socket.getOutputStream();
     }
 
+    public Client(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, new SocketOptions());
+    }
+
+    @Override
     public void close() throws IOException {
         singleExecutorService.shutdown();
         socket.close();
     }
 
+    @Override
+    public SortClient setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public SortClient setTimeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    @Override
     public CompletableFuture<Response<List<Integer>>> sortArray(List<Integer> array) {
-        Protocol.Request request = Protocol.Request.newBuilder()
-                .setSortArrayRequest(Protocol.SortArrayRequest.newBuilder()
-                        .setData(Protocol.Array.newBuilder()
-                                .addAllItem(array)
-                                .build())
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        Protocol.SortArrayRequest sortArrayRequest = Protocol.SortArrayRequest.newBuilder()
+                .setData(Protocol.Array.newBuilder()
+                        .addAllItem(array)
                         .build())
                 .build();
 
         return CompletableFuture.supplyAsync(() -> {
             try {
-                sendRequest(request);
+                long clientSendTime = System.nanoTime();
+                sendRequest(Protocol.Request.newBuilder()
+                        .setSortArrayRequest(sortArrayRequest)
+                        .setClientSendTime(clientSendTime)
+                        .setPriority(priority)
+                        .setTimeoutMicros(remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime))
+                        .build());
                 Protocol.Response response = receiveResponse();
-                return new Response<>(response.getSortArrayResponse().getData().getItemList(), response.getProcessTimeRequest(), response.getProcessTimeClient());
+                long clientReceiveTime = System.nanoTime();
+                checkDeadline(response, timeoutMs, clientSubmitTime, clientReceiveTime);
+                return new Response<>(response.getSortArrayResponse().getData().getItemList(), response.getProcessTimeRequest(), response.getProcessTimeClient(),
+                        PhaseTimes.from(response.getTimings()),
+                        new ClockSample(clientSubmitTime, clientSendTime, response.getServerReceiveTime(), response.getServerSendTime(), clientReceiveTime),
+                        gcSample(response, clientSubmitTime, clientReceiveTime), response.getSortArrayResponse().getAlgorithm());
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
         }, singleExecutorService);
     }
 
-    private void sendRequest(Protocol.Request request) throws IOException {
+    @Override
+    public CompletableFuture<Response<List<Integer>>> sortArrayStreaming(List<Integer> array, int chunkSize) {
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        final int chunkCount = Math.max(1, (array.size() + chunkSize - 1) / chunkSize);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                long clientSendTime = System.nanoTime();
+                long timeoutMicros = remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime);
+                for (int i = 0; i < chunkCount; i++) {
+                    boolean last = i == chunkCount - 1;
+                    Protocol.SortArrayChunk.Builder chunk = Protocol.SortArrayChunk.newBuilder()
+                            .setData(Protocol.Array.newBuilder()
+                                    .addAllItem(array.subList(i * chunkSize, last ? array.size() : (i + 1) * chunkSize))
+                                    .build())
+                            .setLast(last);
+                    if (last) {
+                        chunk.setChunkCount(chunkCount);
+                    }
+                    sendRequest(Protocol.Request.newBuilder()
+                            .setSortArrayChunk(chunk)
+                            .setClientSendTime(clientSendTime)
+                            .setPriority(priority)
+                            .setTimeoutMicros(timeoutMicros)
+                            .build());
+                }
+
+                Protocol.Response first = receiveResponse();
+                long clientReceiveTime = System.nanoTime();
+                List<Integer> body = new ArrayList<>(array.size());
+                Protocol.Response response = first;
+                body.addAll(response.getSortArrayChunk().getData().getItemList());
+                while (!response.getSortArrayChunk().getLast()) {
+                    response = receiveResponse();
+                    body.addAll(response.getSortArrayChunk().getData().getItemList());
+                }
+                checkDeadline(first, timeoutMs, clientSubmitTime, System.nanoTime());
+                return new Response<>(body, first.getProcessTimeRequest(), first.getProcessTimeClient(),
+                        PhaseTimes.from(first.getTimings()),
+                        new ClockSample(clientSubmitTime, clientSendTime, first.getServerReceiveTime(), first.getServerSendTime(), clientReceiveTime),
+                        gcSample(first, clientSubmitTime, clientReceiveTime), "");
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, singleExecutorService);
+    }
+
+    /**
+     * @return timeout to send with the request, zero if the request has no timeout
+     * @throws DeadlineExceededException if the timeout expired before the request is sent
+     */
+    static long remainingTimeoutMicros(long timeoutMs, long clientSubmitTime, long clientSendTime) throws DeadlineExceededException {
+        if (timeoutMs <= 0) {
+            return 0;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toMicros(timeoutMs) - TimeUnit.NANOSECONDS.toMicros(clientSendTime - clientSubmitTime);
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("Timeout expired before the request was sent");
+        }
+        return remaining;
+    }
+
+    static void checkDeadline(Protocol.Response response, long timeoutMs, long clientSubmitTime, long clientReceiveTime) throws DeadlineExceededException {
+        if (response.getStatus() == Protocol.Status.DEADLINE_EXCEEDED) {
+            throw new DeadlineExceededException("Server gave up on the request");
+        }
+        if (timeoutMs > 0 && clientReceiveTime - clientSubmitTime > TimeUnit.MILLISECONDS.toNanos(timeoutMs)) {
+            throw new DeadlineExceededException("Response arrived after the timeout");
+        }
+    }
+
+    static GcSample gcSample(Protocol.Response response, long clientSubmitTime, long clientReceiveTime) {
+        GcPauses pauses = GcPauses.get();
+        return GcSample.from(response.getGcStats(), pauses.pauseTime(clientSubmitTime, clientReceiveTime), pauses.getTotalPauseTime());
+    }
+
+    static ByteBuffer frame(Protocol.Request request) {
         byte[] requestBytes = request.toByteArray();
-        byte[] requestSizeBytes = ProtocolUtils.intToBytes(requestBytes.length);
+        ByteBuffer frame = ByteBuffer.allocate(4 + requestBytes.length);
+        frame.putInt(requestBytes.length);
+        frame.put(requestBytes);
+        frame.flip();
+        return frame;
+    }
 
-        outputStream.write(requestSizeBytes);
-        outputStream.write(requestBytes);
+    private void sendRequest(Protocol.Request request) throws IOException {
+        // Single write, separate writes of prefix and body may stall on delayed ACK while Nagle's algorithm is on
+        outputStream.write(frame(request).array());
     }
 
     private Protocol.Response receiveResponse() throws IOException {
         byte[] responseSizeBytes = new byte[4];
-        if (inputStream.read(responseSizeBytes) != 4) {
+        if (ProtocolUtils.read(inputStream, responseSizeBytes) != 4) {
             throw new IOException("Invalid length of prefix");
         }
         int responseSize = ProtocolUtils.bytesToInt(responseSizeBytes);
@@ -76,11 +200,23 @@ public class Client {
         private final T body;
         private final float processTimeRequest;
         private final float processTimeClient;
+        private final PhaseTimes phaseTimes;
+        private final ClockSample clockSample;
+        private final GcSample gcSample;
+        private final String algorithm;
 
-        public Response(T body, float processTimeRequest, float processTimeClient) {
+        public Response(T body, float processTimeRequest, float processTimeClient, PhaseTimes phaseTimes, ClockSample clockSample, GcSample gcSample, String algorithm) {
             this.body = body;
             this.processTimeRequest = processTimeRequest;
             this.processTimeClient = processTimeClient;
+            this.phaseTimes = phaseTimes;
+            this.clockSample = clockSample;
+            this.gcSample = gcSample;
+            this.algorithm = algorithm;
+        }
+
+        public Response(T body, float processTimeRequest, float processTimeClient) {
+            this(body, processTimeRequest, processTimeClient, PhaseTimes.EMPTY, null, GcSample.EMPTY, "");
         }
 
         public float getProcessTimeClient() {
@@ -91,6 +227,25 @@ public class Client {
             return processTimeRequest;
         }
 
+        public PhaseTimes getPhaseTimes() {
+            return phaseTimes;
+        }
+
+        public ClockSample getClockSample() {
+            return clockSample;
+        }
+
+        public GcSample getGcSample() {
+            return gcSample;
+        }
+
+        /**
+         * @return algorithm chosen by the server, empty for responses of other requests
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
         public T getBody() {
             return body;
         }
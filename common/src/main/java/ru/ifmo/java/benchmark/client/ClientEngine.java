@@ -0,0 +1,52 @@
+package ru.ifmo.java.benchmark.client;
+
+import ru.ifmo.java.benchmark.net.SocketOptions;
+
+import java.io.IOException;
+
+/**
+ * Implementations of {@link SortClient} the benchmark can generate load with.
+ */
+public enum ClientEngine {
+    /**
+     * Blocking socket and a thread per connection
+     */
+    BLOCKING {
+        @Override
+        public SortClient connect(String host, int port, SocketOptions socketOptions) throws IOException {
+            return new Client(host, port, socketOptions);
+        }
+    },
+    /**
+     * Asynchronous channels of all connections share a small thread pool
+     */
+    ASYNC {
+        @Override
+        public SortClient connect(String host, int port, SocketOptions socketOptions) throws IOException {
+            return new AsyncClient(host, port, socketOptions);
+        }
+    },
+    /**
+     * Concurrent requests share a connection, responses are matched by request ids
+     */
+    MULTIPLEXED {
+        @Override
+        public SortClient connect(String host, int port, SocketOptions socketOptions) throws IOException {
+            return new MultiplexingClient(host, port, socketOptions);
+        }
+
+        @Override
+        public boolean isMultiplexing() {
+            return true;
+        }
+    };
+
+    public abstract SortClient connect(String host, int port, SocketOptions socketOptions) throws IOException;
+
+    /**
+     * @return true if a client of the engine may be shared by several concurrent users
+     */
+    public boolean isMultiplexing() {
+        return false;
+    }
+}
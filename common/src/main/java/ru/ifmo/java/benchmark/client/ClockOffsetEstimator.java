@@ -0,0 +1,38 @@
+package ru.ifmo.java.benchmark.client;
+
+/**
+ * Estimates the offset between client and server monotonic clocks.
+ * Like the NTP clock filter it trusts the sample with the smallest network delay,
+ * because queueing on the way inflates delay and makes it asymmetric.
+ */
+public class ClockOffsetEstimator {
+    private ClockSample best;
+
+    public synchronized void addSample(ClockSample sample) {
+        if (sample.serverReceiveTime == 0 && sample.serverSendTime == 0) {
+            // Server does not report clocks
+            return;
+        }
+        if (best == null || sample.networkDelay() < best.networkDelay()) {
+            best = sample;
+        }
+    }
+
+    public synchronized boolean hasEstimate() {
+        return best != null;
+    }
+
+    /**
+     * @return server clock minus client clock in nanoseconds
+     */
+    public synchronized long getOffset() {
+        return best == null ? 0 : best.offset();
+    }
+
+    /**
+     * @return the error bound of {@link #getOffset()} in nanoseconds
+     */
+    public synchronized long getPrecision() {
+        return best == null ? Long.MAX_VALUE : best.networkDelay() / 2;
+    }
+}
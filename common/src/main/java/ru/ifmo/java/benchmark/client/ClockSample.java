@@ -0,0 +1,38 @@
+package ru.ifmo.java.benchmark.client;
+
+/**
+ * Monotonic timestamps of a single request in nanoseconds.
+ * Client and server timestamps come from different processes, see {@link ClockOffsetEstimator}.
+ */
+public class ClockSample {
+    // sortArray is called
+    final public long clientSubmitTime;
+    // request is taken by the client executor and about to be written
+    final public long clientSendTime;
+    final public long serverReceiveTime;
+    final public long serverSendTime;
+    // response is fully read
+    final public long clientReceiveTime;
+
+    public ClockSample(long clientSubmitTime, long clientSendTime, long serverReceiveTime, long serverSendTime, long clientReceiveTime) {
+        this.clientSubmitTime = clientSubmitTime;
+        this.clientSendTime = clientSendTime;
+        this.serverReceiveTime = serverReceiveTime;
+        this.serverSendTime = serverSendTime;
+        this.clientReceiveTime = clientReceiveTime;
+    }
+
+    /**
+     * Round trip without the time spent on the server
+     */
+    public long networkDelay() {
+        return (clientReceiveTime - clientSendTime) - (serverSendTime - serverReceiveTime);
+    }
+
+    /**
+     * NTP-style offset of the server clock relatively to the client clock, exact when network delays are symmetric
+     */
+    public long offset() {
+        return ((serverReceiveTime - clientSendTime) + (serverSendTime - clientReceiveTime)) / 2;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.ifmo.java.benchmark.client;
+
+import java.io.IOException;
+
+/**
+ * Request with a timeout is not answered in time: the timeout expired before the request was sent,
+ * the server gave up on the request or the response arrived late.
+ */
+public class DeadlineExceededException extends IOException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
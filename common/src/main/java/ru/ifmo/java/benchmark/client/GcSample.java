@@ -0,0 +1,38 @@
+package ru.ifmo.java.benchmark.client;
+
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+/**
+ * GC pauses of both processes and allocations of the server during a request, times are in milliseconds.
+ */
+public class GcSample {
+    public static final GcSample EMPTY = new GcSample(0, 0, 0, 0, 0);
+
+    // Pauses of the server overlapping the request, see Protocol.GcStats
+    final public float serverPauseTime;
+    // Pauses of the client from the submission of the request to the response
+    final public float clientPauseTime;
+    // Pauses since the start of each process, differences of two samples give pauses between them
+    final public double serverTotalPauseTime;
+    final public double clientTotalPauseTime;
+    final public long allocatedBytes;
+
+    public GcSample(float serverPauseTime, float clientPauseTime, double serverTotalPauseTime, double clientTotalPauseTime, long allocatedBytes) {
+        this.serverPauseTime = serverPauseTime;
+        this.clientPauseTime = clientPauseTime;
+        this.serverTotalPauseTime = serverTotalPauseTime;
+        this.clientTotalPauseTime = clientTotalPauseTime;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    static GcSample from(Protocol.GcStats gcStats, float clientPauseTime, double clientTotalPauseTime) {
+        return new GcSample(gcStats.getPauseTime(), clientPauseTime, gcStats.getTotalPauseTime(), clientTotalPauseTime, gcStats.getAllocatedBytes());
+    }
+
+    /**
+     * @return true if the request may be delayed by a pause of either process
+     */
+    public boolean isPaused() {
+        return serverPauseTime > 0 || clientPauseTime > 0;
+    }
+}
@@ -0,0 +1,54 @@
+package ru.ifmo.java.benchmark.client;
+
+import java.util.Collection;
+
+/**
+ * Round trip of a request split into stages in milliseconds.
+ */
+public class LatencySplit {
+    public static final LatencySplit EMPTY = new LatencySplit(0, 0, 0, 0, 0);
+
+    // Waiting for the single thread executor of the client
+    final public float clientQueueTime;
+    final public float requestNetworkTime;
+    final public float serverTime;
+    final public float responseNetworkTime;
+    // From sortArray call to the fully read response
+    final public float responseTime;
+
+    public LatencySplit(float clientQueueTime, float requestNetworkTime, float serverTime, float responseNetworkTime, float responseTime) {
+        this.clientQueueTime = clientQueueTime;
+        this.requestNetworkTime = requestNetworkTime;
+        this.serverTime = serverTime;
+        this.responseNetworkTime = responseNetworkTime;
+        this.responseTime = responseTime;
+    }
+
+    /**
+     * @param offset server clock minus client clock in nanoseconds, see {@link ClockOffsetEstimator}
+     */
+    public static LatencySplit of(ClockSample sample, long offset) {
+        return new LatencySplit(
+                (sample.clientSendTime - sample.clientSubmitTime) / 1000000.f,
+                (sample.serverReceiveTime - offset - sample.clientSendTime) / 1000000.f,
+                (sample.serverSendTime - sample.serverReceiveTime) / 1000000.f,
+                (sample.clientReceiveTime - (sample.serverSendTime - offset)) / 1000000.f,
+                (sample.clientReceiveTime - sample.clientSubmitTime) / 1000000.f);
+    }
+
+    public static LatencySplit average(Collection<LatencySplit> splits) {
+        if (splits.isEmpty()) {
+            return EMPTY;
+        }
+        float clientQueueTime = 0, requestNetworkTime = 0, serverTime = 0, responseNetworkTime = 0, responseTime = 0;
+        for (LatencySplit s : splits) {
+            clientQueueTime += s.clientQueueTime;
+            requestNetworkTime += s.requestNetworkTime;
+            serverTime += s.serverTime;
+            responseNetworkTime += s.responseNetworkTime;
+            responseTime += s.responseTime;
+        }
+        int n = splits.size();
+        return new LatencySplit(clientQueueTime / n, requestNetworkTime / n, serverTime / n, responseNetworkTime / n, responseTime / n);
+    }
+}
@@ -0,0 +1,278 @@
+package ru.ifmo.java.benchmark.client;
+
+import ru.ifmo.java.benchmark.jvm.GcPauses;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Client which shares a single connection between any number of concurrent requests.
+ * Every request carries an id the server echoes in all frames of its response,
+ * so responses are matched to requests in whatever order they arrive.
+ * <p>
+ * Arrays streamed in chunks are sent one at a time, since the server assembles a single stream per connection.
+ */
+public class MultiplexingClient implements SortClient {
+    private final AsynchronousSocketChannel channel;
+    private final AtomicLong requestIds = new AtomicLong(0);
+    private final Map<Long, Exchange> exchanges = new ConcurrentHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile int priority = 0;
+    private volatile long timeoutMs = 0;
+
+    // Frames are written by a single pending write at a time
+    private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    // Completed when the last submitted stream is over
+    private CompletableFuture<?> streamTail = CompletableFuture.completedFuture(null);
+
+    public MultiplexingClient(String serverHost, int serverPort, SocketOptions socketOptions, AsynchronousChannelGroup group) throws IOException {
+        // Pauses are recorded from now on
+        GcPauses.get();
+        channel = AsyncClient.connect(serverHost, serverPort, socketOptions, group);
+        receiveResponses();
+    }
+
+    /**
+     * Uses the group shared by all asynchronous clients of the process
+     */
+    public MultiplexingClient(String serverHost, int serverPort, SocketOptions socketOptions) throws IOException {
+        this(serverHost, serverPort, socketOptions, AsyncClient.sharedGroup());
+    }
+
+    public MultiplexingClient(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, new SocketOptions());
+    }
+
+    /**
+     * Fails requests which are not answered yet.
+     */
+    @Override
+    public void close() throws IOException {
+        fail(new AsynchronousCloseException());
+    }
+
+    @Override
+    public SortClient setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public SortClient setTimeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @return number of requests sent and not answered yet
+     */
+    public int getPending() {
+        return exchanges.size();
+    }
+
+    @Override
+    public CompletableFuture<Client.Response<List<Integer>>> sortArray(List<Integer> array) {
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        Protocol.SortArrayRequest sortArrayRequest = Protocol.SortArrayRequest.newBuilder()
+                .setData(Protocol.Array.newBuilder()
+                        .addAllItem(array)
+                        .build())
+                .build();
+
+        long clientSendTime = System.nanoTime();
+        long timeoutMicros;
+        try {
+            timeoutMicros = Client.remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime);
+        } catch (DeadlineExceededException e) {
+            return AsyncClient.failed(e);
+        }
+        long requestId = requestIds.incrementAndGet();
+        Exchange exchange = register(requestId, false);
+        send(Client.frame(Protocol.Request.newBuilder()
+                .setSortArrayRequest(sortArrayRequest)
+                .setClientSendTime(clientSendTime)
+                .setPriority(priority)
+                .setTimeoutMicros(timeoutMicros)
+                .setRequestId(requestId)
+                .build()));
+        return exchange.done.thenApply(ignored -> exchange.toResponse(exchange.first.getSortArrayResponse().getData().getItemList(),
+                exchange.first.getSortArrayResponse().getAlgorithm(), timeoutMs, clientSubmitTime, clientSendTime));
+    }
+
+    @Override
+    public CompletableFuture<Client.Response<List<Integer>>> sortArrayStreaming(List<Integer> array, int chunkSize) {
+        final long clientSubmitTime = System.nanoTime();
+        final long timeoutMs = this.timeoutMs;
+        final int chunkCount = Math.max(1, (array.size() + chunkSize - 1) / chunkSize);
+
+        return enqueueStream(() -> {
+            long clientSendTime = System.nanoTime();
+            long timeoutMicros;
+            try {
+                timeoutMicros = Client.remainingTimeoutMicros(timeoutMs, clientSubmitTime, clientSendTime);
+            } catch (DeadlineExceededException e) {
+                return AsyncClient.failed(e);
+            }
+            long requestId = requestIds.incrementAndGet();
+            Exchange exchange = register(requestId, true);
+            for (int i = 0; i < chunkCount; i++) {
+                boolean last = i == chunkCount - 1;
+                Protocol.SortArrayChunk.Builder chunk = Protocol.SortArrayChunk.newBuilder()
+                        .setData(Protocol.Array.newBuilder()
+                                .addAllItem(array.subList(i * chunkSize, last ? array.size() : (i + 1) * chunkSize))
+                                .build())
+                        .setLast(last);
+                if (last) {
+                    chunk.setChunkCount(chunkCount);
+                }
+                send(Client.frame(Protocol.Request.newBuilder()
+                        .setSortArrayChunk(chunk)
+                        .setClientSendTime(clientSendTime)
+                        .setPriority(priority)
+                        .setTimeoutMicros(timeoutMicros)
+                        .setRequestId(requestId)
+                        .build()));
+            }
+            return exchange.done.thenApply(ignored -> exchange.toResponse(exchange.items, "", timeoutMs, clientSubmitTime, clientSendTime));
+        });
+    }
+
+    /**
+     * Starts the stream when the previous one is over, whether it succeeded or not.
+     */
+    private synchronized <T> CompletableFuture<T> enqueueStream(Supplier<CompletableFuture<T>> stream) {
+        CompletableFuture<T> result = streamTail.handle((ignored, e) -> null).thenCompose(ignored -> stream.get());
+        streamTail = result;
+        return result;
+    }
+
+    private Exchange register(long requestId, boolean streaming) {
+        Exchange exchange = new Exchange(streaming);
+        exchanges.put(requestId, exchange);
+        // Failed concurrently, the exchange may be missed by fail
+        Throwable e = failure.get();
+        if (e != null && exchanges.remove(requestId) != null) {
+            exchange.done.completeExceptionally(e);
+        }
+        return exchange;
+    }
+
+    private void send(ByteBuffer frame) {
+        frames.add(frame);
+        if (writing.compareAndSet(false, true)) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Must be called by the owner of the write, starts the next write or gives the ownership up.
+     */
+    private void writeNext() {
+        ByteBuffer frame = frames.poll();
+        if (frame == null) {
+            writing.set(false);
+            // A frame added after the queue was found empty
+            if (!frames.isEmpty() && writing.compareAndSet(false, true)) {
+                writeNext();
+            }
+            return;
+        }
+        AsyncClient.write(channel, frame).whenComplete((ignored, e) -> {
+            if (e != null) {
+                fail(e);
+            } else {
+                writeNext();
+            }
+        });
+    }
+
+    private void receiveResponses() {
+        AsyncClient.receiveResponse(channel).whenComplete((response, e) -> {
+            if (e != null) {
+                fail(e);
+                return;
+            }
+            Exchange exchange = exchanges.get(response.getRequestId());
+            if (exchange == null) {
+                fail(new IOException("Response to an unknown request " + response.getRequestId()));
+                return;
+            }
+            if (exchange.add(response)) {
+                exchanges.remove(response.getRequestId());
+                exchange.done.complete(null);
+            }
+            receiveResponses();
+        });
+    }
+
+    private void fail(Throwable e) {
+        failure.compareAndSet(null, e);
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        for (Long requestId : exchanges.keySet()) {
+            Exchange exchange = exchanges.remove(requestId);
+            if (exchange != null) {
+                exchange.done.completeExceptionally(failure.get());
+            }
+        }
+    }
+
+    /**
+     * Response frames of a request, filled by the thread which receives responses.
+     */
+    private static class Exchange {
+        final boolean streaming;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final List<Integer> items = new ArrayList<>();
+        Protocol.Response first;
+        long clientReceiveTime;
+
+        Exchange(boolean streaming) {
+            this.streaming = streaming;
+        }
+
+        /**
+         * @return true if the response is complete
+         */
+        boolean add(Protocol.Response response) {
+            if (first == null) {
+                first = response;
+                clientReceiveTime = System.nanoTime();
+            }
+            if (!streaming) {
+                return true;
+            }
+            items.addAll(response.getSortArrayChunk().getData().getItemList());
+            return response.getSortArrayChunk().getLast();
+        }
+
+        Client.Response<List<Integer>> toResponse(List<Integer> body, String algorithm, long timeoutMs, long clientSubmitTime, long clientSendTime) {
+            AsyncClient.checkDeadline(first, timeoutMs, clientSubmitTime, clientReceiveTime);
+            return new Client.Response<>(body, first.getProcessTimeRequest(), first.getProcessTimeClient(),
+                    PhaseTimes.from(first.getTimings()),
+                    new ClockSample(clientSubmitTime, clientSendTime, first.getServerReceiveTime(), first.getServerSendTime(), clientReceiveTime),
+                    Client.gcSample(first, clientSubmitTime, clientReceiveTime), algorithm);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.ifmo.java.benchmark.client;
+
+/**
+ * GC impact on a series of requests.
+ */
+public class PauseStats {
+    public static final PauseStats EMPTY = new PauseStats(0, 0, 0, 0);
+
+    // Milliseconds of pauses of each process while the requests were sent
+    final public double serverPauseTime;
+    final public double clientPauseTime;
+    // Requests overlapping a pause of the server or the client
+    final public long pausedRequests;
+    final public double allocatedBytesPerRequest;
+
+    public PauseStats(double serverPauseTime, double clientPauseTime, long pausedRequests, double allocatedBytesPerRequest) {
+        this.serverPauseTime = serverPauseTime;
+        this.clientPauseTime = clientPauseTime;
+        this.pausedRequests = pausedRequests;
+        this.allocatedBytesPerRequest = allocatedBytesPerRequest;
+    }
+}
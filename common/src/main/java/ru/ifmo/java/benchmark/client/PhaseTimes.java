@@ -0,0 +1,68 @@
+package ru.ifmo.java.benchmark.client;
+
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+import java.util.Collection;
+
+/**
+ * Server side phases of a request in milliseconds, see {@link Protocol.Timings}.
+ */
+public class PhaseTimes {
+    public static final PhaseTimes EMPTY = new PhaseTimes(0, 0, 0, 0, 0, 0, 0);
+
+    final public float readTime;
+    final public float parseTime;
+    final public float queueWaitTime;
+    final public float processTime;
+    final public float handoffTime;
+    final public float serializeTime;
+    final public float outputWaitTime;
+
+    public PhaseTimes(float readTime, float parseTime, float queueWaitTime, float processTime, float handoffTime, float serializeTime, float outputWaitTime) {
+        this.readTime = readTime;
+        this.parseTime = parseTime;
+        this.queueWaitTime = queueWaitTime;
+        this.processTime = processTime;
+        this.handoffTime = handoffTime;
+        this.serializeTime = serializeTime;
+        this.outputWaitTime = outputWaitTime;
+    }
+
+    static PhaseTimes from(Protocol.Timings timings) {
+        return new PhaseTimes(timings.getReadTime(), timings.getParseTime(), timings.getQueueWaitTime(), timings.getProcessTime(),
+                timings.getHandoffTime(), timings.getSerializeTime(), timings.getOutputWaitTime());
+    }
+
+    public static PhaseTimes average(Collection<PhaseTimes> phases) {
+        if (phases.isEmpty()) {
+            return EMPTY;
+        }
+        float readTime = 0, parseTime = 0, queueWaitTime = 0, processTime = 0, handoffTime = 0, serializeTime = 0, outputWaitTime = 0;
+        for (PhaseTimes p : phases) {
+            readTime += p.readTime;
+            parseTime += p.parseTime;
+            queueWaitTime += p.queueWaitTime;
+            processTime += p.processTime;
+            handoffTime += p.handoffTime;
+            serializeTime += p.serializeTime;
+            outputWaitTime += p.outputWaitTime;
+        }
+        int n = phases.size();
+        return new PhaseTimes(readTime / n, parseTime / n, queueWaitTime / n, processTime / n, handoffTime / n, serializeTime / n, outputWaitTime / n);
+    }
+
+    /**
+     * @return name of the phase with the largest time
+     */
+    public String dominantPhase() {
+        String[] names = {"read", "parse", "queueWait", "process", "handoff", "serialize", "outputWait"};
+        float[] values = {readTime, parseTime, queueWaitTime, processTime, handoffTime, serializeTime, outputWaitTime};
+        int max = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[max]) {
+                max = i;
+            }
+        }
+        return names[max];
+    }
+}
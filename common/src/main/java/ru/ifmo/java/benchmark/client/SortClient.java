@@ -0,0 +1,34 @@
+package ru.ifmo.java.benchmark.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connection to a server. Requests of a connection are exchanged one at a time in the order of submission,
+ * a request submitted while another one is in flight waits, the wait is a part of its response time.
+ * {@link MultiplexingClient} is the exception, its requests are in flight at once.
+ */
+public interface SortClient {
+    CompletableFuture<Client.Response<List<Integer>>> sortArray(List<Integer> array);
+
+    /**
+     * Sends the array in chunks of {@code chunkSize} items, the sorted array is received in chunks as well.
+     * Timings and clock sample are taken from the first chunk of the response.
+     */
+    CompletableFuture<Client.Response<List<Integer>>> sortArrayStreaming(List<Integer> array, int chunkSize);
+
+    /**
+     * Priority class of the following requests, zero by default
+     */
+    SortClient setPriority(int priority);
+
+    /**
+     * Timeout of the following requests, zero by default waits forever. The rest of the timeout is sent with the request
+     * so that the server gives up on it when nobody waits for the response anymore.
+     * A request which is not answered in time completes with {@link DeadlineExceededException}.
+     */
+    SortClient setTimeout(long timeoutMs);
+
+    void close() throws IOException;
+}
@@ -0,0 +1,27 @@
+package ru.ifmo.java.benchmark.jvm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Bytes allocated by threads, zero if the JVM does not count them.
+ */
+public class Allocations {
+    private static final com.sun.management.ThreadMXBean THREADS;
+
+    static {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        THREADS = threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+    }
+
+    private Allocations() {
+    }
+
+    /**
+     * @return bytes allocated by the current thread since it started
+     */
+    public static long currentThread() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
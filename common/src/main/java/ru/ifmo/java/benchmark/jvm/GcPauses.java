@@ -0,0 +1,81 @@
+package ru.ifmo.java.benchmark.jvm;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Stop-the-world GC pauses of this JVM received as {@link GarbageCollectorMXBean} notifications,
+ * on the {@link System#nanoTime()} timeline so they can be matched with requests.
+ * <p>
+ * The last {@link #CAPACITY} pauses are kept. Times are precise to a millisecond, a notification arrives shortly
+ * after its pause, so a pause which ends right before a request finishes may be missed.
+ */
+public class GcPauses {
+    static final int CAPACITY = 1024;
+
+    private static final GcPauses INSTANCE = new GcPauses();
+
+    // Start of the JVM on the nanoTime timeline, GcInfo times are relative to it
+    private final long startTime;
+    private final long[] pauseBegins = new long[CAPACITY];
+    private final long[] pauseEnds = new long[CAPACITY];
+    private long pauses = 0;
+    private long totalPauseTime = 0;
+
+    private GcPauses() {
+        startTime = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1000000;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Cycles of concurrent collectors are not pauses, their pauses are reported by separate beans
+            if (collector instanceof NotificationEmitter && !collector.getName().endsWith("Cycles")) {
+                ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                    if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                        GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+                        long begin = startTime + info.getStartTime() * 1000000;
+                        add(begin, begin + info.getDuration() * 1000000);
+                    }
+                }, null, null);
+            }
+        }
+    }
+
+    /**
+     * Pauses are recorded from the first call on.
+     */
+    public static GcPauses get() {
+        return INSTANCE;
+    }
+
+    private synchronized void add(long begin, long end) {
+        int slot = (int) (pauses++ % CAPACITY);
+        pauseBegins[slot] = begin;
+        pauseEnds[slot] = end;
+        totalPauseTime += end - begin;
+    }
+
+    /**
+     * @return milliseconds of pauses within {@code [from, to]} of {@link System#nanoTime()}
+     */
+    public synchronized float pauseTime(long from, long to) {
+        long overlap = 0;
+        for (long i = pauses - 1; i >= 0 && i >= pauses - CAPACITY; i--) {
+            int slot = (int) (i % CAPACITY);
+            if (pauseEnds[slot] < from) {
+                break;
+            }
+            overlap += Math.max(0, Math.min(to, pauseEnds[slot]) - Math.max(from, pauseBegins[slot]));
+        }
+        return overlap / 1000000.f;
+    }
+
+    /**
+     * @return milliseconds of all recorded pauses
+     */
+    public synchronized double getTotalPauseTime() {
+        return totalPauseTime / 1000000.;
+    }
+}
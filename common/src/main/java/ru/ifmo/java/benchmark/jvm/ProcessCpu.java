@@ -0,0 +1,26 @@
+package ru.ifmo.java.benchmark.jvm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * CPU time of the JVM process, zero if the JVM does not report it.
+ */
+public class ProcessCpu {
+    private static final com.sun.management.OperatingSystemMXBean OS;
+
+    static {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        OS = os instanceof com.sun.management.OperatingSystemMXBean ? (com.sun.management.OperatingSystemMXBean) os : null;
+    }
+
+    private ProcessCpu() {
+    }
+
+    /**
+     * @return CPU time used by all threads of the process since it started, ns
+     */
+    public static long nanos() {
+        return OS == null ? 0 : Math.max(OS.getProcessCpuTime(), 0);
+    }
+}
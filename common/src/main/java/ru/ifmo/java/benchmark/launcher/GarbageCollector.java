@@ -0,0 +1,30 @@
+package ru.ifmo.java.benchmark.launcher;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collectors of HotSpot. A collector which is not available in the launched JVM makes the server process fail to start.
+ */
+public enum GarbageCollector {
+    /**
+     * Collector chosen by the JVM
+     */
+    DEFAULT,
+    SERIAL("-XX:+UseSerialGC"),
+    PARALLEL("-XX:+UseParallelGC"),
+    G1("-XX:+UseG1GC"),
+    // Experimental before JDK 15
+    ZGC("-XX:+UnlockExperimentalVMOptions", "-XX:+UseZGC"),
+    SHENANDOAH("-XX:+UnlockExperimentalVMOptions", "-XX:+UseShenandoahGC");
+
+    private final List<String> flags;
+
+    GarbageCollector(String... flags) {
+        this.flags = Arrays.asList(flags);
+    }
+
+    public List<String> getFlags() {
+        return flags;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.ifmo.java.benchmark.launcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stop-the-world pauses of a GC log written by a forked server.
+ */
+public class GcLogSummary {
+    public static final GcLogSummary EMPTY = new GcLogSummary(0, 0, 0);
+
+    // Unified logging of JDK 9+: "[0.123s][info][gc] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 3.456ms"
+    private static final Pattern UNIFIED_PAUSE = Pattern.compile("Pause.*?(\\d+(?:\\.\\d+)?)ms\\s*$");
+    // JDK 8: "0.123: [GC (Allocation Failure)  8192K->1024K(31744K), 0.0012345 secs]"
+    private static final Pattern LEGACY_PAUSE = Pattern.compile("^.*\\[(?:Full )?GC.*, (\\d+\\.\\d+) secs\\]\\s*$");
+
+    final public int pauses;
+    // Milliseconds
+    final public double totalPauseTime;
+    final public double maxPauseTime;
+
+    public GcLogSummary(int pauses, double totalPauseTime, double maxPauseTime) {
+        this.pauses = pauses;
+        this.totalPauseTime = totalPauseTime;
+        this.maxPauseTime = maxPauseTime;
+    }
+
+    public static GcLogSummary parse(Path log) throws IOException {
+        int pauses = 0;
+        double total = 0;
+        double max = 0;
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                double pause;
+                Matcher unified = UNIFIED_PAUSE.matcher(line);
+                Matcher legacy = LEGACY_PAUSE.matcher(line);
+                if (unified.find()) {
+                    pause = Double.parseDouble(unified.group(1));
+                } else if (legacy.find()) {
+                    pause = Double.parseDouble(legacy.group(1)) * 1000;
+                } else {
+                    continue;
+                }
+                pauses++;
+                total += pause;
+                max = Math.max(max, pause);
+            }
+        }
+        return new GcLogSummary(pauses, total, max);
+    }
+}
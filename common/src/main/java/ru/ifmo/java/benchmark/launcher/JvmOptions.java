@@ -0,0 +1,121 @@
+package ru.ifmo.java.benchmark.launcher;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line of a forked server JVM. Defaults keep the flags of the JVM unchanged.
+ */
+public class JvmOptions {
+    private String heapSize = null;
+    private GarbageCollector garbageCollector = GarbageCollector.DEFAULT;
+    private boolean alwaysPreTouch = false;
+    private String cpus = null;
+    private List<String> flags = new ArrayList<>();
+
+    /**
+     * Fixed heap sizes with pre-touched heap for every collector
+     */
+    public static Map<String, JvmOptions> presets() {
+        Map<String, JvmOptions> presets = new LinkedHashMap<>();
+        for (GarbageCollector garbageCollector : GarbageCollector.values()) {
+            if (garbageCollector != GarbageCollector.DEFAULT) {
+                presets.put(garbageCollector.name().toLowerCase(), new JvmOptions().setHeapSize("1g").setAlwaysPreTouch(true).setGarbageCollector(garbageCollector));
+            }
+        }
+        return presets;
+    }
+
+    public String getHeapSize() {
+        return heapSize;
+    }
+
+    /**
+     * Initial and maximum heap size in the format of {@code -Xmx}, {@code null} keeps the defaults
+     */
+    public JvmOptions setHeapSize(String heapSize) {
+        this.heapSize = heapSize;
+        return this;
+    }
+
+    public GarbageCollector getGarbageCollector() {
+        return garbageCollector;
+    }
+
+    public JvmOptions setGarbageCollector(GarbageCollector garbageCollector) {
+        this.garbageCollector = garbageCollector;
+        return this;
+    }
+
+    public boolean getAlwaysPreTouch() {
+        return alwaysPreTouch;
+    }
+
+    /**
+     * Commits the whole heap on start, so page faults of heap growth do not show up in the measurements
+     */
+    public JvmOptions setAlwaysPreTouch(boolean alwaysPreTouch) {
+        this.alwaysPreTouch = alwaysPreTouch;
+        return this;
+    }
+
+    public String getCpus() {
+        return cpus;
+    }
+
+    /**
+     * CPU list in the format of {@code taskset -c}, the process is pinned with taskset so it works on Linux only
+     */
+    public JvmOptions setCpus(String cpus) {
+        this.cpus = cpus;
+        return this;
+    }
+
+    public List<String> getFlags() {
+        return flags;
+    }
+
+    /**
+     * Additional JVM flags, appended after the generated ones so they take precedence
+     */
+    public JvmOptions addFlags(String... flags) {
+        this.flags.addAll(Arrays.asList(flags));
+        return this;
+    }
+
+    /**
+     * @param gcLog file of the GC log, {@code null} disables it
+     * @return command line up to the main class
+     */
+    List<String> toCommand(String java, String classPath, Path gcLog) {
+        List<String> command = new ArrayList<>();
+        if (cpus != null) {
+            command.addAll(Arrays.asList("taskset", "-c", cpus));
+        }
+        command.add(java);
+        if (heapSize != null) {
+            command.add("-Xms" + heapSize);
+            command.add("-Xmx" + heapSize);
+        }
+        command.addAll(garbageCollector.getFlags());
+        if (alwaysPreTouch) {
+            command.add("-XX:+AlwaysPreTouch");
+        }
+        if (gcLog != null) {
+            if (System.getProperty("java.specification.version").startsWith("1.")) {
+                command.add("-Xloggc:" + gcLog);
+            } else {
+                // Pauses of concurrent collectors are logged as phases
+                command.add("-Xlog:gc,gc+phases:file=" + gcLog);
+            }
+        }
+        command.addAll(flags);
+        command.add("-cp");
+        command.add(classPath);
+        return command;
+    }
+}
@@ -0,0 +1,118 @@
+package ru.ifmo.java.benchmark.launcher;
+
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server of a single architecture in its own JVM, so servers under comparison do not share heap, GC and JIT.
+ * The process uses the class path of the current JVM and stops when its standard input is closed.
+ */
+public class ServerProcess implements Closeable {
+    private static final String READY = "READY";
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final Process process;
+    private final Path gcLog;
+    private final Path outputLog;
+
+    private ServerProcess(Process process, Path gcLog, Path outputLog) {
+        this.process = process;
+        this.gcLog = gcLog;
+        this.outputLog = outputLog;
+    }
+
+    /**
+     * Starts the server process and waits until it listens on the port.
+     *
+     * @param workDirectory directory of the GC log and the output of the process
+     * @throws IOException if the process exits before the server is started, e.g. the collector is not supported
+     */
+    public static ServerProcess start(Server.ServerType serverType, String host, int port, int threads, JvmOptions jvmOptions, Path workDirectory) throws IOException {
+        String name = serverType.toString().toLowerCase() + "-" + port;
+        Path gcLog = workDirectory.resolve(name + ".gc.log");
+        Path outputLog = workDirectory.resolve(name + ".log");
+
+        List<String> command = jvmOptions.toCommand(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(), System.getProperty("java.class.path"), gcLog);
+        command.addAll(Arrays.asList(ServerProcess.class.getName(), serverType.name(), host, String.valueOf(port), String.valueOf(threads)));
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(outputLog.toFile())
+                .start();
+        ServerProcess serverProcess = new ServerProcess(process, gcLog, outputLog);
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null && !line.equals(READY)) {
+            // Anything before the server is started, e.g. warnings of the JVM
+        }
+        if (line == null) {
+            serverProcess.close();
+            throw new IOException("Server process exited with " + process.exitValue() + ": " + String.join(" ", command)
+                    + ", see " + outputLog);
+        }
+        return serverProcess;
+    }
+
+    public Path getGcLog() {
+        return gcLog;
+    }
+
+    public Path getOutputLog() {
+        return outputLog;
+    }
+
+    /**
+     * @return pauses of the process, complete after {@link #close()}
+     */
+    public GcLogSummary getGcSummary() throws IOException {
+        return Files.exists(gcLog) ? GcLogSummary.parse(gcLog) : GcLogSummary.EMPTY;
+    }
+
+    /**
+     * Stops the server gracefully, so the GC log is complete, and kills it after a timeout.
+     */
+    @Override
+    public void close() throws IOException {
+        process.getOutputStream().close();
+        try {
+            if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Entry point of the server process: {@code <type> <host> <port> <threads>}
+     */
+    public static void main(String[] args) throws IOException {
+        Server server = Server.create(args[1], Integer.parseInt(args[2]),
+                new ServerConfig().setThreads(Integer.parseInt(args[3])), Server.ServerType.valueOf(args[0]));
+        Thread worker = new Thread(server::run);
+        worker.setDaemon(true);
+        worker.start();
+        System.out.println(READY);
+        System.out.flush();
+
+        // Parent closes the input to stop the server
+        while (System.in.read() != -1) {
+        }
+        server.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,195 @@
+package ru.ifmo.java.benchmark.net;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TCP options shared by all servers and the client. Zero sizes and {@code null} flags keep system defaults.
+ */
+public class SocketOptions {
+    private static final Logger logger = Logger.getLogger(SocketOptions.class.getName());
+    // StandardSocketOptions.SO_REUSEPORT appeared in Java 9, null when the runtime does not have it
+    private static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
+
+    private Boolean tcpNoDelay;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private boolean reusePort;
+    private int backlog;
+
+    /**
+     * Named configurations compared by the socket options benchmark
+     */
+    public static Map<String, SocketOptions> presets() {
+        Map<String, SocketOptions> presets = new LinkedHashMap<>();
+        presets.put("default", new SocketOptions());
+        presets.put("nodelay", new SocketOptions().setTcpNoDelay(true));
+        presets.put("nodelay-large-buffers", new SocketOptions().setTcpNoDelay(true).setSendBufferSize(1 << 20).setReceiveBufferSize(1 << 20).setBacklog(4096));
+        return presets;
+    }
+
+    public SocketOptions copy() {
+        return new SocketOptions()
+                .setTcpNoDelay(tcpNoDelay)
+                .setSendBufferSize(sendBufferSize)
+                .setReceiveBufferSize(receiveBufferSize)
+                .setReusePort(reusePort)
+                .setBacklog(backlog);
+    }
+
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public SocketOptions setTcpNoDelay(Boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public SocketOptions setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public SocketOptions setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public SocketOptions setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public SocketOptions setBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public static boolean isReusePortSupported() {
+        return SO_REUSEPORT != null;
+    }
+
+    /**
+     * Binds a new listening socket. SO_RCVBUF is set on the listener so that accepted sockets inherit it before the handshake.
+     */
+    public ServerSocket bind(SocketAddress address) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        if (receiveBufferSize > 0) {
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        }
+        if (reusePort) {
+            setReusePortReflectively(serverSocket);
+        }
+        serverSocket.bind(address, backlog);
+        return serverSocket;
+    }
+
+    public ServerSocketChannel bind(ServerSocketChannel channel, SocketAddress address) throws IOException {
+        applyToListener(channel);
+        return channel.bind(address, backlog);
+    }
+
+    public AsynchronousServerSocketChannel bind(AsynchronousServerSocketChannel channel, SocketAddress address) throws IOException {
+        applyToListener(channel);
+        return channel.bind(address, backlog);
+    }
+
+    public void applyTo(Socket socket) throws SocketException {
+        if (tcpNoDelay != null) {
+            socket.setTcpNoDelay(tcpNoDelay);
+        }
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Applies options to a connected or connecting channel, e.g. {@link java.nio.channels.SocketChannel}
+     */
+    public void applyTo(NetworkChannel channel) throws IOException {
+        if (tcpNoDelay != null) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+        }
+        if (sendBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+
+    private void applyToListener(NetworkChannel channel) throws IOException {
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        if (reusePort) {
+            if (SO_REUSEPORT != null && channel.supportedOptions().contains(SO_REUSEPORT)) {
+                channel.setOption(SO_REUSEPORT, true);
+            } else {
+                logger.log(Level.WARNING, "SO_REUSEPORT is not supported, ignored");
+            }
+        }
+    }
+
+    private static void setReusePortReflectively(ServerSocket serverSocket) {
+        if (SO_REUSEPORT == null) {
+            logger.log(Level.WARNING, "SO_REUSEPORT is not supported, ignored");
+            return;
+        }
+        try {
+            // ServerSocket.setOption appeared in Java 9 together with SO_REUSEPORT
+            Method setOption = ServerSocket.class.getMethod("setOption", SocketOption.class, Object.class);
+            setOption.invoke(serverSocket, SO_REUSEPORT, true);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "SO_REUSEPORT is not supported, ignored");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> findReusePortOption() {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            return (SocketOption<Boolean>) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tcpNoDelay=" + (tcpNoDelay == null ? "default" : tcpNoDelay) +
+                ", sndbuf=" + (sendBufferSize > 0 ? sendBufferSize : "default") +
+                ", rcvbuf=" + (receiveBufferSize > 0 ? receiveBufferSize : "default") +
+                ", reusePort=" + reusePort +
+                ", backlog=" + (backlog > 0 ? backlog : "default");
+    }
+}
@@ -5,6 +5,17 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 public class ProtocolUtils {
+    /**
+     * Size of the trailer appended to a serialized response, see {@link #putResponseTrailer(ByteBuffer, float)}.
+     */
+    public static final int RESPONSE_TRAILER_SIZE = 21;
+    private static final int TIMINGS_SIZE = 10;
+    private static final int OUTPUT_WAIT_TIME_OFFSET = 8;
+    private static final int SERVER_SEND_TIME_OFFSET = 13;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
     public static byte[] intToBytes(int value) {
         ByteBuffer b = ByteBuffer.allocate(4);
         b.putInt(value);
@@ -16,6 +27,36 @@ public class ProtocolUtils {
         return b.getInt();
     }
 
+    /**
+     * Appends a {@code timings} field with serializeTime and outputWaitTime and a {@code serverSendTime} field to a serialized response.
+     * Protobuf merges repeated occurrences of a message field, so the trailer is combined with the rest of timings on parsing.
+     * Floats and fixed64 are fixed-width on the wire, that allows to patch write times right before the write,
+     * see {@link #patchResponseTrailer(ByteBuffer, float, long)}.
+     */
+    public static void putResponseTrailer(ByteBuffer buffer, float serializeTime) {
+        buffer.put(tag(Protocol.Response.TIMINGS_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED));
+        buffer.put((byte) TIMINGS_SIZE);
+        buffer.put(tag(Protocol.Timings.SERIALIZETIME_FIELD_NUMBER, WIRE_TYPE_FIXED32));
+        buffer.putInt(Integer.reverseBytes(Float.floatToIntBits(serializeTime)));
+        buffer.put(tag(Protocol.Timings.OUTPUTWAITTIME_FIELD_NUMBER, WIRE_TYPE_FIXED32));
+        buffer.putInt(0);
+        buffer.put(tag(Protocol.Response.SERVERSENDTIME_FIELD_NUMBER, WIRE_TYPE_FIXED64));
+        buffer.putLong(0);
+    }
+
+    /**
+     * @param buffer serialized response which ends with the trailer
+     */
+    public static void patchResponseTrailer(ByteBuffer buffer, float outputWaitTime, long serverSendTime) {
+        int trailerOffset = buffer.limit() - RESPONSE_TRAILER_SIZE;
+        buffer.putInt(trailerOffset + OUTPUT_WAIT_TIME_OFFSET, Integer.reverseBytes(Float.floatToIntBits(outputWaitTime)));
+        buffer.putLong(trailerOffset + SERVER_SEND_TIME_OFFSET, Long.reverseBytes(serverSendTime));
+    }
+
+    private static byte tag(int fieldNumber, int wireType) {
+        return (byte) (fieldNumber << 3 | wireType);
+    }
+
     public static int read(InputStream inputStream, byte[] buffer) throws IOException {
         int remaining = buffer.length;
         while (remaining > 0) {
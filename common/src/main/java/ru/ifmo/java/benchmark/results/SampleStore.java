@@ -0,0 +1,284 @@
+package ru.ifmo.java.benchmark.results;
+
+import ru.ifmo.java.benchmark.client.ClockSample;
+import ru.ifmo.java.benchmark.client.GcSample;
+import ru.ifmo.java.benchmark.client.PhaseTimes;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of per-request samples in a memory-mapped file with fixed-width records,
+ * so that the load generator does not keep an object per request.
+ * <p>
+ * Records are appended concurrently without locks, the file grows by segments of {@link #SEGMENT_RECORDS} records.
+ * The number of records is stored in the header on {@link #flush()} and {@link #close()}.
+ */
+public class SampleStore implements Closeable {
+    public static final int RECORD_SIZE = 120;
+    static final int SEGMENT_RECORDS = 1 << 20;
+
+    private static final int MAGIC = 0x53414D50;
+    private static final int HEADER_SIZE = 64;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_RECORDS * RECORD_SIZE;
+
+    private static final int POINT = 0;
+    private static final int CLIENT = 4;
+    private static final int CLIENT_SUBMIT_TIME = 8;
+    private static final int CLIENT_SEND_TIME = 16;
+    private static final int SERVER_RECEIVE_TIME = 24;
+    private static final int SERVER_SEND_TIME = 32;
+    private static final int CLIENT_RECEIVE_TIME = 40;
+    private static final int PROCESS_TIME_REQUEST = 48;
+    private static final int PROCESS_TIME_CLIENT = 52;
+    // Seven floats in the order of PhaseTimes fields
+    private static final int PHASES = 56;
+    // SortAlgorithm ordinal plus one, zero if unknown
+    private static final int ALGORITHM = 84;
+    private static final int SERVER_PAUSE_TIME = 88;
+    private static final int CLIENT_PAUSE_TIME = 92;
+    private static final int ALLOCATED_BYTES = 96;
+    private static final int SERVER_TOTAL_PAUSE_TIME = 104;
+    private static final int CLIENT_TOTAL_PAUSE_TIME = 112;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final AtomicLong size;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Creates a new store, space for {@code expectedRecords} is allocated right away.
+     */
+    public static SampleStore create(Path path, long expectedRecords) throws IOException {
+        return new SampleStore(path, expectedRecords, true);
+    }
+
+    /**
+     * Opens a store written before, new records are appended after the existing ones.
+     */
+    public static SampleStore open(Path path) throws IOException {
+        return new SampleStore(path, 0, false);
+    }
+
+    /**
+     * Creates a store in a temporary file which is deleted on exit.
+     */
+    public static SampleStore createTemporary(long expectedRecords) throws IOException {
+        File file = File.createTempFile("benchmark", ".samples");
+        file.deleteOnExit();
+        return create(file.toPath(), expectedRecords);
+    }
+
+    private SampleStore(Path path, long expectedRecords, boolean create) throws IOException {
+        channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (create) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, RECORD_SIZE);
+            header.putLong(8, 0);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Not a sample store: " + path);
+        }
+        size = new AtomicLong(header.getLong(8));
+        segment(Math.max(expectedRecords, size.get()) / SEGMENT_RECORDS);
+    }
+
+    /**
+     * @return index of the record
+     */
+    public long append(int point, int client, ClockSample clockSample, float processTimeRequest, float processTimeClient, PhaseTimes phaseTimes, GcSample gcSample, String algorithm) throws IOException {
+        long index = size.getAndIncrement();
+        MappedByteBuffer segment = segment(index / SEGMENT_RECORDS);
+        int offset = (int) (index % SEGMENT_RECORDS) * RECORD_SIZE;
+
+        segment.putInt(offset + POINT, point);
+        segment.putInt(offset + CLIENT, client);
+        segment.putLong(offset + CLIENT_SUBMIT_TIME, clockSample.clientSubmitTime);
+        segment.putLong(offset + CLIENT_SEND_TIME, clockSample.clientSendTime);
+        segment.putLong(offset + SERVER_RECEIVE_TIME, clockSample.serverReceiveTime);
+        segment.putLong(offset + SERVER_SEND_TIME, clockSample.serverSendTime);
+        segment.putLong(offset + CLIENT_RECEIVE_TIME, clockSample.clientReceiveTime);
+        segment.putFloat(offset + PROCESS_TIME_REQUEST, processTimeRequest);
+        segment.putFloat(offset + PROCESS_TIME_CLIENT, processTimeClient);
+        segment.putFloat(offset + PHASES, phaseTimes.readTime);
+        segment.putFloat(offset + PHASES + 4, phaseTimes.parseTime);
+        segment.putFloat(offset + PHASES + 8, phaseTimes.queueWaitTime);
+        segment.putFloat(offset + PHASES + 12, phaseTimes.processTime);
+        segment.putFloat(offset + PHASES + 16, phaseTimes.handoffTime);
+        segment.putFloat(offset + PHASES + 20, phaseTimes.serializeTime);
+        segment.putFloat(offset + PHASES + 24, phaseTimes.outputWaitTime);
+        segment.putInt(offset + ALGORITHM, encodeAlgorithm(algorithm));
+        segment.putFloat(offset + SERVER_PAUSE_TIME, gcSample.serverPauseTime);
+        segment.putFloat(offset + CLIENT_PAUSE_TIME, gcSample.clientPauseTime);
+        segment.putLong(offset + ALLOCATED_BYTES, gcSample.allocatedBytes);
+        segment.putDouble(offset + SERVER_TOTAL_PAUSE_TIME, gcSample.serverTotalPauseTime);
+        segment.putDouble(offset + CLIENT_TOTAL_PAUSE_TIME, gcSample.clientTotalPauseTime);
+        return index;
+    }
+
+    /**
+     * @return number of appended records, records of appends which are not finished yet may be incomplete
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return cursor over records {@code [from, to)}, it must not be used concurrently with appends to this range
+     */
+    public Cursor cursor(long from, long to) {
+        return new Cursor(from, Math.min(to, size()));
+    }
+
+    public void flush() {
+        header.putLong(8, size());
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long number) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (number < current.length) {
+            return current[(int) number];
+        }
+        synchronized (this) {
+            current = segments;
+            if (number >= current.length) {
+                MappedByteBuffer[] extended = Arrays.copyOf(current, (int) number + 1);
+                for (int i = current.length; i <= number; i++) {
+                    extended[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * SEGMENT_SIZE, SEGMENT_SIZE);
+                }
+                segments = extended;
+                current = extended;
+            }
+            return current[(int) number];
+        }
+    }
+
+    private static int encodeAlgorithm(String algorithm) {
+        for (SortAlgorithm value : SortAlgorithm.values()) {
+            if (value.name().equals(algorithm)) {
+                return value.ordinal() + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads records one by one without allocations, getters refer to the current record.
+     */
+    public class Cursor {
+        private final long to;
+        private long index;
+        private MappedByteBuffer segment;
+        private int offset;
+
+        private Cursor(long from, long to) {
+            this.index = from - 1;
+            this.to = to;
+        }
+
+        public boolean next() throws IOException {
+            if (++index >= to) {
+                return false;
+            }
+            segment = segment(index / SEGMENT_RECORDS);
+            offset = (int) (index % SEGMENT_RECORDS) * RECORD_SIZE;
+            return true;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public int getPoint() {
+            return segment.getInt(offset + POINT);
+        }
+
+        public int getClient() {
+            return segment.getInt(offset + CLIENT);
+        }
+
+        public long getClientSubmitTime() {
+            return segment.getLong(offset + CLIENT_SUBMIT_TIME);
+        }
+
+        public long getClientSendTime() {
+            return segment.getLong(offset + CLIENT_SEND_TIME);
+        }
+
+        public long getServerReceiveTime() {
+            return segment.getLong(offset + SERVER_RECEIVE_TIME);
+        }
+
+        public long getServerSendTime() {
+            return segment.getLong(offset + SERVER_SEND_TIME);
+        }
+
+        public long getClientReceiveTime() {
+            return segment.getLong(offset + CLIENT_RECEIVE_TIME);
+        }
+
+        public float getProcessTimeRequest() {
+            return segment.getFloat(offset + PROCESS_TIME_REQUEST);
+        }
+
+        public float getProcessTimeClient() {
+            return segment.getFloat(offset + PROCESS_TIME_CLIENT);
+        }
+
+        /**
+         * @param phase index of the phase in the order of {@link PhaseTimes} fields
+         */
+        public float getPhaseTime(int phase) {
+            return segment.getFloat(offset + PHASES + 4 * phase);
+        }
+
+        /**
+         * @return name of the sort algorithm, empty if unknown
+         */
+        public String getAlgorithm() {
+            int code = segment.getInt(offset + ALGORITHM);
+            return code == 0 ? "" : SortAlgorithm.values()[code - 1].name();
+        }
+
+        public float getServerPauseTime() {
+            return segment.getFloat(offset + SERVER_PAUSE_TIME);
+        }
+
+        public float getClientPauseTime() {
+            return segment.getFloat(offset + CLIENT_PAUSE_TIME);
+        }
+
+        public long getAllocatedBytes() {
+            return segment.getLong(offset + ALLOCATED_BYTES);
+        }
+
+        public double getServerTotalPauseTime() {
+            return segment.getDouble(offset + SERVER_TOTAL_PAUSE_TIME);
+        }
+
+        public double getClientTotalPauseTime() {
+            return segment.getDouble(offset + CLIENT_TOTAL_PAUSE_TIME);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.ifmo.java.benchmark.results;
+
+import ru.ifmo.java.benchmark.client.LatencySplit;
+import ru.ifmo.java.benchmark.client.PauseStats;
+import ru.ifmo.java.benchmark.client.PhaseTimes;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Averages of a range of {@link SampleStore} records computed in a single pass.
+ */
+public class SampleSummary {
+    final public long count;
+    final public double processTimeRequest;
+    final public double processTimeClient;
+    final public PhaseTimes phaseTimes;
+    final public LatencySplit latencySplit;
+    final public PauseStats pauseStats;
+    // Sort algorithm of most of the requests
+    final public String algorithm;
+
+    private SampleSummary(long count, double processTimeRequest, double processTimeClient, PhaseTimes phaseTimes, LatencySplit latencySplit, PauseStats pauseStats, String algorithm) {
+        this.count = count;
+        this.processTimeRequest = processTimeRequest;
+        this.processTimeClient = processTimeClient;
+        this.phaseTimes = phaseTimes;
+        this.latencySplit = latencySplit;
+        this.pauseStats = pauseStats;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @param clockOffset server clock minus client clock in nanoseconds
+     */
+    public static SampleSummary of(SampleStore store, long from, long to, long clockOffset) throws IOException {
+        long count = 0;
+        double processTimeRequest = 0;
+        double processTimeClient = 0;
+        double[] phases = new double[7];
+        double clientQueueTime = 0, requestNetworkTime = 0, serverTime = 0, responseNetworkTime = 0, responseTime = 0;
+        long pausedRequests = 0;
+        double allocatedBytes = 0;
+        // Cumulative pause times, their ranges are the pauses while the samples were taken
+        double serverTotalPauseMin = Double.MAX_VALUE, serverTotalPauseMax = 0;
+        double clientTotalPauseMin = Double.MAX_VALUE, clientTotalPauseMax = 0;
+        Map<String, Long> algorithms = new HashMap<>();
+
+        SampleStore.Cursor cursor = store.cursor(from, to);
+        while (cursor.next()) {
+            count++;
+            processTimeRequest += cursor.getProcessTimeRequest();
+            processTimeClient += cursor.getProcessTimeClient();
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] += cursor.getPhaseTime(i);
+            }
+            // Same as LatencySplit.of without a ClockSample per record
+            clientQueueTime += (cursor.getClientSendTime() - cursor.getClientSubmitTime()) / 1000000.;
+            requestNetworkTime += (cursor.getServerReceiveTime() - clockOffset - cursor.getClientSendTime()) / 1000000.;
+            serverTime += (cursor.getServerSendTime() - cursor.getServerReceiveTime()) / 1000000.;
+            responseNetworkTime += (cursor.getClientReceiveTime() - (cursor.getServerSendTime() - clockOffset)) / 1000000.;
+            responseTime += (cursor.getClientReceiveTime() - cursor.getClientSubmitTime()) / 1000000.;
+            if (cursor.getServerPauseTime() > 0 || cursor.getClientPauseTime() > 0) {
+                pausedRequests++;
+            }
+            allocatedBytes += cursor.getAllocatedBytes();
+            serverTotalPauseMin = Math.min(serverTotalPauseMin, cursor.getServerTotalPauseTime());
+            serverTotalPauseMax = Math.max(serverTotalPauseMax, cursor.getServerTotalPauseTime());
+            clientTotalPauseMin = Math.min(clientTotalPauseMin, cursor.getClientTotalPauseTime());
+            clientTotalPauseMax = Math.max(clientTotalPauseMax, cursor.getClientTotalPauseTime());
+            algorithms.merge(cursor.getAlgorithm(), 1L, Long::sum);
+        }
+
+        if (count == 0) {
+            return new SampleSummary(0, -1, -1, PhaseTimes.EMPTY, LatencySplit.EMPTY, PauseStats.EMPTY, "");
+        }
+        final long n = count;
+        return new SampleSummary(n, processTimeRequest / n, processTimeClient / n,
+                new PhaseTimes((float) (phases[0] / n), (float) (phases[1] / n), (float) (phases[2] / n), (float) (phases[3] / n),
+                        (float) (phases[4] / n), (float) (phases[5] / n), (float) (phases[6] / n)),
+                new LatencySplit((float) (clientQueueTime / n), (float) (requestNetworkTime / n), (float) (serverTime / n),
+                        (float) (responseNetworkTime / n), (float) (responseTime / n)),
+                new PauseStats(serverTotalPauseMax - serverTotalPauseMin, clientTotalPauseMax - clientTotalPauseMin, pausedRequests, allocatedBytes / n),
+                algorithms.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(""));
+    }
+}
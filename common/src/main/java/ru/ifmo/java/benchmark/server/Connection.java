@@ -0,0 +1,27 @@
+package ru.ifmo.java.benchmark.server;
+
+import ru.ifmo.java.benchmark.server.memory.MemoryBudget;
+import ru.ifmo.java.benchmark.server.schedule.ConnectionSchedule;
+import ru.ifmo.java.benchmark.server.stream.SortStream;
+
+/**
+ * State of a client connection shared by its requests, created by {@link Server#newConnection()}.
+ */
+public class Connection {
+    // Unique within the server
+    final int id;
+    final SortStream stream;
+    final MemoryBudget budget;
+    final ConnectionSchedule schedule;
+
+    Connection(int id, SortStream stream, MemoryBudget budget, ConnectionSchedule schedule) {
+        this.id = id;
+        this.stream = stream;
+        this.budget = budget;
+        this.schedule = schedule;
+    }
+
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+}
@@ -1,13 +1,32 @@
 package ru.ifmo.java.benchmark.server;
 
+import ru.ifmo.java.benchmark.jvm.Allocations;
+import ru.ifmo.java.benchmark.jvm.GcPauses;
 import ru.ifmo.java.benchmark.protocol.Protocol;
+import ru.ifmo.java.benchmark.protocol.ProtocolUtils;
 import ru.ifmo.java.benchmark.server.async.AsyncServer;
 import ru.ifmo.java.benchmark.server.blocking.BlockingServer;
 import ru.ifmo.java.benchmark.server.blocking.NaiveBlockingServer;
+import ru.ifmo.java.benchmark.server.cache.ResponseCache;
+import ru.ifmo.java.benchmark.server.memory.MemoryBudget;
+import ru.ifmo.java.benchmark.server.metrics.ServerMetrics;
+import ru.ifmo.java.benchmark.server.netty.NettyServer;
 import ru.ifmo.java.benchmark.server.nonblocking.NonBlockingServer;
+import ru.ifmo.java.benchmark.server.reactive.ReactiveServer;
+import ru.ifmo.java.benchmark.server.schedule.ConnectionSchedule;
+import ru.ifmo.java.benchmark.server.schedule.InlinePolicy;
+import ru.ifmo.java.benchmark.server.schedule.RequestScheduler;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+import ru.ifmo.java.benchmark.server.sort.SortCancelledException;
+import ru.ifmo.java.benchmark.server.stream.SortStream;
+import ru.ifmo.java.benchmark.trace.TraceRecorder;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,59 +34,223 @@ public abstract class Server {
     protected final ServerType serverType;
     protected final int serverPort;
     protected final String serverHost;
+    protected final ServerConfig config;
 
     protected final Logger logger;
+    protected final ServerMetrics metrics;
+    protected final ResponseCache responseCache;
+    protected final MemoryBudget memoryBudget;
+    protected final TraceRecorder traceRecorder;
+    // Null if requests are never processed inline
+    private final InlinePolicy inlinePolicy;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    // Created by createWorkingPool
+    private RequestScheduler scheduler;
 
-    protected Server(ServerType serverType, String serverHost, int serverPort) {
+    protected Server(ServerType serverType, String serverHost, int serverPort, ServerConfig config) throws IOException {
         this.serverType = serverType;
         this.serverPort = serverPort;
         this.serverHost = serverHost;
+        this.config = config;
         logger = Logger.getLogger(serverType.toString());
+        metrics = new ServerMetrics(serverType.toString(), serverPort);
+        // Pauses are recorded from now on
+        GcPauses.get();
+        responseCache = config.getResponseCacheBytes() > 0 ? new ResponseCache(config.getResponseCacheBytes()) : null;
+        metrics.setResponseCache(responseCache);
+        memoryBudget = new MemoryBudget(config.getMemoryBytes());
+        metrics.setMemoryBudget(memoryBudget);
+        traceRecorder = config.getTraceDirectory() == null ? null
+                : new TraceRecorder(config.getTraceDirectory().resolve(serverType.toString().toLowerCase() + "-" + serverPort + ".trace"));
+        inlinePolicy = config.getInlineThresholdNanos() > 0 ? new InlinePolicy(config.getInlineThresholdNanos()) : null;
+        metrics.register();
     }
 
-    static public Server create(String serverHost, int serverPort, int threads, ServerType type) throws IOException {
+    static public Server create(String serverHost, int serverPort, ServerConfig config, ServerType type) throws IOException {
         switch (type) {
             case NAIVE_BLOCKING:
-                return new NaiveBlockingServer(serverHost, serverPort);
+                return new NaiveBlockingServer(serverHost, serverPort, config);
             case BLOCKING:
-                return new BlockingServer(serverHost, serverPort, threads);
+                return new BlockingServer(serverHost, serverPort, config);
             case NON_BLOCKING:
-                return new NonBlockingServer(serverHost, serverPort, threads);
+                return new NonBlockingServer(serverHost, serverPort, config);
             case ASYNC:
-                return new AsyncServer(serverHost, serverPort, threads);
+                return new AsyncServer(serverHost, serverPort, config);
+            case NETTY:
+                return new NettyServer(serverHost, serverPort, config);
+            case REACTIVE:
+                return new ReactiveServer(serverHost, serverPort, config);
         }
         return null;
     }
 
+    static public Server create(String serverHost, int serverPort, int threads, ServerType type) throws IOException {
+        return create(serverHost, serverPort, new ServerConfig().setThreads(threads), type);
+    }
+
     static public Server create(String serverHost, int serverPort, ServerType type) throws IOException {
         return create(serverHost, serverPort, 4, type);
     }
 
-    static protected Protocol.SortArrayResponse processSortArrayRequest(Protocol.SortArrayRequest request) {
-        ArrayList<Integer> arrayList = new ArrayList<>(request.getData().getItemList());
-
-        // Gnome sort
-        {
-            int i = 1;
-            int tmp;
-            while (i < arrayList.size()) {
-                if (i == 0 || arrayList.get(i - 1) <= arrayList.get(i)) {
-                    i++;
-                } else {
-                    tmp = arrayList.get(i);
-                    arrayList.set(i, arrayList.get(i - 1));
-                    arrayList.set(i - 1, tmp);
-                    i--;
-                }
-            }
+    static private int[] toIntArray(Protocol.Array data) {
+        int[] array = new int[data.getItemCount()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = data.getItem(i);
+        }
+        return array;
+    }
+
+    protected Protocol.SortArrayResponse processSortArrayRequest(Protocol.SortArrayRequest request) {
+        return processSortArrayRequest(request, false, 0);
+    }
+
+    /**
+     * @throws SortCancelledException if the deadline passes before the array is sorted
+     */
+    private Protocol.SortArrayResponse processSortArrayRequest(Protocol.SortArrayRequest request, boolean hasDeadline, long deadline) {
+        int[] array = toIntArray(request.getData());
+
+        SortAlgorithm algorithm = config.getSortAlgorithm().select(array);
+        if (hasDeadline) {
+            algorithm.sort(array, deadline);
+        } else {
+            algorithm.sort(array);
+        }
+
+        Protocol.Array.Builder sorted = Protocol.Array.newBuilder();
+        for (int item : array) {
+            sorted.addItem(item);
+        }
+        return Protocol.SortArrayResponse.newBuilder().setData(sorted).setAlgorithm(algorithm.name()).build();
+    }
+
+    /**
+     * @return sorted array of the stream if the chunk completes it, {@code null} otherwise
+     */
+    protected int[] processSortArrayChunk(SortStream stream, Protocol.SortArrayChunk chunk) {
+        int[] run = toIntArray(chunk.getData());
+        config.getSortAlgorithm().select(run).sort(run);
+        return stream.add(run, chunk.getLast() ? chunk.getChunkCount() : 0);
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    protected Connection newConnection() {
+        return new Connection(connectionCount.getAndIncrement(), new SortStream(config.getMaxStreamBytes()), memoryBudget.child(config.getConnectionMemoryBytes()),
+                new ConnectionSchedule(config.getRateLimit(), config.getRateBurst()));
+    }
+
+    /**
+     * Length prefix must be checked before anything is allocated for the frame, invalid frame closes the connection.
+     */
+    protected boolean isValidFrameSize(int messageSize) {
+        return messageSize >= 0 && messageSize <= config.getMaxFrameSize();
+    }
+
+    /**
+     * Blocks until the frame fits the memory budgets of the connection and the server.
+     */
+    protected void acquireInput(Connection connection, int messageSize) throws InterruptedException {
+        connection.budget.acquire(messageSize);
+    }
+
+    /**
+     * Requests must be submitted to the pool with {@link #workerFor(ClientContext)} to be scheduled
+     */
+    protected ExecutorService createWorkingPool(int threads) {
+        RequestScheduler pool = new RequestScheduler(threads, config.getSchedulingPolicy(), config.getThreadPlacement().workerThreads(), config.getWaitStrategy());
+        metrics.setWorkerQueueLength(pool::getQueueLength);
+        metrics.setRateLimitedRequests(pool::getRateLimited);
+        scheduler = pool;
+        return pool;
+    }
+
+    /**
+     * @return executor which queues processing of the request in the working pool by its priority and estimated cost
+     */
+    protected Executor workerFor(ClientContext clientContext) {
+        estimateCost(clientContext);
+        return scheduler.executor(clientContext.connection.schedule, clientContext.items, clientContext.cost, clientContext.request.getPriority());
+    }
+
+    /**
+     * Requests which are cheap by the inline policy are processed by the I/O thread which read them,
+     * the others must be submitted with {@link #workerFor(ClientContext)}.
+     * Rate limited connections are always scheduled, since only the working pool waits for tokens.
+     *
+     * @return true if the request should be processed inline
+     */
+    protected boolean processInline(ClientContext clientContext) {
+        if (inlinePolicy == null || config.getRateLimit() > 0) {
+            return false;
         }
+        estimateCost(clientContext);
+        if (!inlinePolicy.shouldInline(clientContext.cost)) {
+            return false;
+        }
+        metrics.inlineRequest();
+        return true;
+    }
 
-        return Protocol.SortArrayResponse.newBuilder().setData(Protocol.Array.newBuilder().addAllItem(arrayList).build()).build();
+    private void estimateCost(ClientContext clientContext) {
+        Protocol.Request request = clientContext.request;
+        // Cached responses cost nothing, their requests are parsed without the data
+        clientContext.items = request.hasSortArrayRequest() ? request.getSortArrayRequest().getData().getItemCount()
+                : request.hasSortArrayChunk() ? request.getSortArrayChunk().getData().getItemCount() : 0;
+        clientContext.cost = clientContext.responsePayload != null ? 0 : config.getSortAlgorithm().estimateCost(clientContext.items);
     }
 
-    protected ClientContext beginProcessClient(Protocol.Request request) {
-        ClientContext clientContext = new ClientContext(request);
+    /**
+     * @param message       request body without length prefix
+     * @param readBeginTime time when the length prefix of the request was received
+     * @param connection    connection which acquired the whole capacity of the message buffer from its budget,
+     *                      the bytes are released when the request is processed
+     * @throws IOException if the request is malformed or the stream exceeds its memory bound, the connection should be closed
+     */
+    protected ClientContext beginProcessClient(ByteBuffer message, long readBeginTime, Connection connection) throws IOException {
+        long readEndTime = System.nanoTime();
+        long allocatedBefore = Allocations.currentThread();
+        int messageSize = message.remaining();
+
+        ClientContext clientContext;
+        ResponseCache.Key cacheKey;
+        byte[] cachedResponse;
+        try {
+            cacheKey = responseCache == null ? null : ResponseCache.Key.of(message);
+            cachedResponse = cacheKey == null ? null : responseCache.get(cacheKey);
+
+            // On a cache hit only the fields around the payload are parsed
+            clientContext = new ClientContext(connection, message.capacity(), cachedResponse == null
+                    ? Protocol.Request.parseFrom(message)
+                    : Protocol.Request.parseFrom(cacheKey.getMetadata()));
+            if (clientContext.request.hasSortArrayChunk()) {
+                connection.stream.reserve(clientContext.request.getSortArrayChunk().getData().getItemCount());
+                clientContext.stream = connection.stream;
+            } else if (clientContext.request.getTimeoutMicros() > 0) {
+                clientContext.hasDeadline = true;
+                clientContext.deadline = readBeginTime + clientContext.request.getTimeoutMicros() * 1000;
+            }
+            if (traceRecorder != null) {
+                // Streamed arrays are not traced, on a cache hit the payload is parsed for the trace only
+                Protocol.Request traced = cachedResponse == null ? clientContext.request : Protocol.Request.parseFrom(message.duplicate());
+                if (traced.hasSortArrayRequest()) {
+                    traceRecorder.record(readBeginTime, connection.id, traced.getSortArrayRequest().getData());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            connection.budget.release(message.capacity());
+            throw e;
+        }
+        clientContext.cacheKey = cacheKey;
+        clientContext.responsePayload = cachedResponse;
+        clientContext.readBeginTime = readBeginTime;
+        clientContext.readEndTime = readEndTime;
         clientContext.contextProcessBeginTime = System.nanoTime();
+        clientContext.allocatedBytes = Allocations.currentThread() - allocatedBefore;
+        metrics.requestStarted(4 + messageSize);
+        metrics.recordRead(readEndTime - readBeginTime);
         logger.log(Level.INFO, "ClientContext created " + clientContext.hashCode());
         return clientContext;
     }
@@ -75,45 +258,297 @@ public abstract class Server {
     protected void processClientRequest(ClientContext clientContext) {
         logger.log(Level.INFO, "Begin process request " + clientContext.hashCode());
         clientContext.requestProcessBeginTime = System.nanoTime();
-        if (clientContext.request.hasSortArrayRequest()) {
-            clientContext.responseBuilder.setSortArrayResponse(processSortArrayRequest(clientContext.request.getSortArrayRequest()));
-        } else {
-            throw new IllegalStateException("Unexpected request type");
+        metrics.recordQueueWait(clientContext.requestProcessBeginTime - clientContext.contextProcessBeginTime);
+        long allocatedBefore = Allocations.currentThread();
+        try {
+            if (clientContext.isExpired()) {
+                // Nobody waits for the response anymore
+                expire(clientContext);
+            } else if (clientContext.responsePayload != null) {
+                logger.log(Level.INFO, "Response is cached " + clientContext.hashCode());
+            } else if (clientContext.request.hasSortArrayRequest()) {
+                clientContext.sortArrayResponse = processSortArrayRequest(clientContext.request.getSortArrayRequest(), clientContext.hasDeadline, clientContext.deadline);
+            } else if (clientContext.request.hasSortArrayChunk()) {
+                clientContext.streamResult = processSortArrayChunk(clientContext.stream, clientContext.request.getSortArrayChunk());
+            } else {
+                throw new IllegalStateException("Unexpected request type");
+            }
+        } catch (SortCancelledException e) {
+            expire(clientContext);
+        } finally {
+            // The request is not needed anymore, the cache key refers to the message until the response is serialized
+            if (clientContext.cacheKey == null) {
+                clientContext.releaseInput();
+            }
         }
         clientContext.requestProcessEndTime = System.nanoTime();
+        clientContext.allocatedBytes += Allocations.currentThread() - allocatedBefore;
+        metrics.recordProcess(clientContext.requestProcessEndTime - clientContext.requestProcessBeginTime);
+        if (inlinePolicy != null && !clientContext.deadlineExceeded) {
+            inlinePolicy.record(clientContext.cost, clientContext.requestProcessEndTime - clientContext.requestProcessBeginTime);
+        }
+        if (!clientContext.hasResponse()) {
+            metrics.requestFinished(0);
+        }
         logger.log(Level.INFO, "End process request " + clientContext.hashCode());
     }
 
+    private void expire(ClientContext clientContext) {
+        clientContext.deadlineExceeded = true;
+        metrics.deadlineExceeded();
+    }
+
+    /**
+     * @return per-request part of the response, the payload is serialized separately by {@link #serializeResponse(ClientContext)}
+     */
     protected Protocol.Response endProcessClient(ClientContext clientContext) {
         logger.log(Level.INFO, "End process client " + clientContext.hashCode());
         clientContext.contextProcessEndTime = System.nanoTime();
         clientContext.responseBuilder.setProcessTimeClient((clientContext.contextProcessEndTime - clientContext.contextProcessBeginTime) / 1000000.f);
         clientContext.responseBuilder.setProcessTimeRequest((clientContext.requestProcessEndTime - clientContext.requestProcessBeginTime) / 1000000.f);
+        clientContext.responseBuilder.setTimings(Protocol.Timings.newBuilder()
+                .setReadTime((clientContext.readEndTime - clientContext.readBeginTime) / 1000000.f)
+                .setParseTime((clientContext.contextProcessBeginTime - clientContext.readEndTime) / 1000000.f)
+                .setQueueWaitTime((clientContext.requestProcessBeginTime - clientContext.contextProcessBeginTime) / 1000000.f)
+                .setProcessTime((clientContext.requestProcessEndTime - clientContext.requestProcessBeginTime) / 1000000.f)
+                .setHandoffTime((clientContext.contextProcessEndTime - clientContext.requestProcessEndTime) / 1000000.f));
+        GcPauses pauses = GcPauses.get();
+        clientContext.responseBuilder.setGcStats(Protocol.GcStats.newBuilder()
+                .setPauseTime(pauses.pauseTime(clientContext.readBeginTime, clientContext.contextProcessEndTime))
+                .setTotalPauseTime(pauses.getTotalPauseTime())
+                .setAllocatedBytes(clientContext.allocatedBytes));
+        clientContext.responseBuilder.setClientSendTime(clientContext.request.getClientSendTime());
+        clientContext.responseBuilder.setRequestId(clientContext.request.getRequestId());
+        if (clientContext.deadlineExceeded) {
+            clientContext.responseBuilder.setStatus(Protocol.Status.DEADLINE_EXCEEDED);
+        }
+        clientContext.responseBuilder.setServerReceiveTime(clientContext.readEndTime);
         return clientContext.responseBuilder.build();
     }
 
+    /**
+     * Ends processing of the client and serializes the response with length prefix and trailer.
+     * Payload and per-request fields are serialized as two messages which protobuf merges on parsing,
+     * so the payload bytes can be cached.
+     *
+     * @return first frame of the response, {@code null} if the request has no response
+     * @see #serializeNextResponse(ClientContext)
+     */
+    protected ByteBuffer serializeResponse(ClientContext clientContext) {
+        if (!clientContext.hasResponse()) {
+            return null;
+        }
+        if (!clientContext.deadlineExceeded && clientContext.isExpired()) {
+            // Expired while waiting for the output, the payload would not be read
+            expire(clientContext);
+        }
+        byte[] response = endProcessClient(clientContext).toByteArray();
+        if (clientContext.streamResult != null) {
+            return serializeResponseChunk(clientContext, response, clientContext.contextProcessEndTime);
+        }
+
+        byte[] payload = clientContext.responsePayload;
+        if (clientContext.deadlineExceeded) {
+            payload = new byte[0];
+        } else if (payload == null) {
+            payload = Protocol.Response.newBuilder().setSortArrayResponse(clientContext.sortArrayResponse).build().toByteArray();
+            if (clientContext.cacheKey != null) {
+                responseCache.put(clientContext.cacheKey, payload);
+            }
+        }
+        clientContext.releaseInput();
+        return frame(clientContext, payload, response, clientContext.contextProcessEndTime);
+    }
+
+    /**
+     * Must be called after a frame is written.
+     *
+     * @return next frame of a streamed response, {@code null} when the response is complete
+     */
+    protected ByteBuffer serializeNextResponse(ClientContext clientContext) {
+        if (!clientContext.hasMoreResponses()) {
+            return null;
+        }
+        long requestId = clientContext.request.getRequestId();
+        byte[] response = requestId == 0 ? new byte[0] : Protocol.Response.newBuilder().setRequestId(requestId).build().toByteArray();
+        return serializeResponseChunk(clientContext, response, System.nanoTime());
+    }
+
+    private ByteBuffer serializeResponseChunk(ClientContext clientContext, byte[] response, long serializeBeginTime) {
+        int[] result = clientContext.streamResult;
+        int from = clientContext.streamPosition;
+        int to = (int) Math.min(result.length, (long) from + Math.max(1, config.getStreamChunkSize()));
+        Protocol.Array.Builder data = Protocol.Array.newBuilder();
+        for (int i = from; i < to; i++) {
+            data.addItem(result[i]);
+        }
+        clientContext.streamPosition = to;
+        clientContext.streamFinished = to == result.length;
+
+        byte[] payload = Protocol.Response.newBuilder()
+                .setSortArrayChunk(Protocol.SortArrayChunk.newBuilder().setData(data).setLast(clientContext.streamFinished))
+                .build().toByteArray();
+        return frame(clientContext, payload, response, serializeBeginTime);
+    }
+
+    private ByteBuffer frame(ClientContext clientContext, byte[] payload, byte[] response, long serializeBeginTime) {
+        int responseSize = payload.length + response.length + ProtocolUtils.RESPONSE_TRAILER_SIZE;
+        clientContext.connection.budget.forceAcquire(4 + responseSize);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + responseSize);
+        buffer.putInt(responseSize);
+        buffer.put(payload);
+        buffer.put(response);
+        clientContext.serializeEndTime = System.nanoTime();
+        ProtocolUtils.putResponseTrailer(buffer, (clientContext.serializeEndTime - serializeBeginTime) / 1000000.f);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Must be called right before the first byte of the response is written.
+     */
+    protected void beginWriteResponse(ClientContext clientContext, ByteBuffer response) {
+        clientContext.firstByteWriteTime = System.nanoTime();
+        ProtocolUtils.patchResponseTrailer(response, (clientContext.firstByteWriteTime - clientContext.serializeEndTime) / 1000000.f, clientContext.firstByteWriteTime);
+    }
+
+    /**
+     * Must be called when the last byte of a response frame is written.
+     */
+    protected void finishProcessClient(ClientContext clientContext, ByteBuffer response) {
+        clientContext.connection.budget.release(response.capacity());
+        if (clientContext.hasMoreResponses()) {
+            metrics.bytesWritten(response.limit());
+            return;
+        }
+        metrics.recordWrite(System.nanoTime() - clientContext.requestProcessEndTime);
+        metrics.requestFinished(response.limit());
+    }
+
+    /**
+     * Must be called instead of {@link #finishProcessClient(ClientContext, ByteBuffer)} if a frame can not be written.
+     */
+    protected void abortResponse(ClientContext clientContext, ByteBuffer response) {
+        clientContext.connection.budget.release(response.capacity());
+        metrics.requestFinished(0);
+    }
+
+    /**
+     * Must be called if a processed request is dropped before its response is serialized.
+     */
+    protected void discardResponse(ClientContext clientContext) {
+        clientContext.releaseInput();
+        metrics.requestFinished(0);
+    }
+
+    /**
+     * Writes all frames of the response to a blocking stream.
+     */
+    protected void writeResponse(ClientContext clientContext, OutputStream outputStream) throws IOException {
+        for (ByteBuffer response = serializeResponse(clientContext); response != null; response = serializeNextResponse(clientContext)) {
+            try {
+                beginWriteResponse(clientContext, response);
+                outputStream.write(response.array(), 0, response.limit());
+            } catch (IOException e) {
+                abortResponse(clientContext, response);
+                throw e;
+            }
+            finishProcessClient(clientContext, response);
+        }
+    }
+
     public abstract void run();
 
-    public abstract void close() throws IOException;
+    public void close() throws IOException {
+        metrics.unregister();
+        if (traceRecorder != null) {
+            traceRecorder.close();
+        }
+    }
 
     public enum ServerType {
         NAIVE_BLOCKING,
         BLOCKING,
         NON_BLOCKING,
-        ASYNC
+        ASYNC,
+        NETTY,
+        REACTIVE
     }
 
     protected static class ClientContext {
         final Protocol.Response.Builder responseBuilder;
         final Protocol.Request request;
-        float contextProcessBeginTime;
-        float contextProcessEndTime;
-        float requestProcessBeginTime;
-        float requestProcessEndTime;
+        final Connection connection;
+        // Bytes of the message buffer acquired from the budget of the connection
+        long inputBytes;
+        // Returns the message buffer to its owner, e.g. a pooled buffer of Netty
+        Runnable inputRelease;
+        // Refers to the receive buffer until the response is serialized
+        ResponseCache.Key cacheKey;
+        // Serialized response with the result only
+        byte[] responsePayload;
+        Protocol.SortArrayResponse sortArrayResponse;
+        SortStream stream;
+        // Set when the chunk completes the stream
+        int[] streamResult;
+        int streamPosition;
+        boolean streamFinished;
+        // Deadline of requests with a timeout, in the server clock
+        boolean hasDeadline;
+        long deadline;
+        boolean deadlineExceeded;
+        // Array items and estimated work, set when the request is dispatched
+        int items;
+        long cost;
+        // By the threads which parsed and processed the request
+        long allocatedBytes;
+        long readBeginTime;
+        long readEndTime;
+        long contextProcessBeginTime;
+        long contextProcessEndTime;
+        long requestProcessBeginTime;
+        long requestProcessEndTime;
+        long serializeEndTime;
+        long firstByteWriteTime;
 
-        public ClientContext(Protocol.Request request) {
+        public ClientContext(Connection connection, long inputBytes, Protocol.Request request) {
+            this.connection = connection;
+            this.inputBytes = inputBytes;
             this.request = request;
             responseBuilder = Protocol.Response.newBuilder();
         }
+
+        void releaseInput() {
+            if (inputBytes != 0) {
+                connection.budget.release(inputBytes);
+                inputBytes = 0;
+            }
+            if (inputRelease != null) {
+                inputRelease.run();
+                inputRelease = null;
+            }
+        }
+
+        /**
+         * @param action called once the message buffer is not referred to anymore
+         */
+        public void onInputReleased(Runnable action) {
+            inputRelease = action;
+        }
+
+        boolean isExpired() {
+            return hasDeadline && System.nanoTime() - deadline > 0;
+        }
+
+        /**
+         * @return false for chunks which do not complete a stream, valid after the request is processed
+         */
+        public boolean hasResponse() {
+            return stream == null || streamResult != null;
+        }
+
+        boolean hasMoreResponses() {
+            return streamResult != null && !streamFinished;
+        }
     }
 }
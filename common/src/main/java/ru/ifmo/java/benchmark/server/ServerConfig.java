@@ -0,0 +1,269 @@
+package ru.ifmo.java.benchmark.server;
+
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.affinity.ThreadPlacement;
+import ru.ifmo.java.benchmark.server.nonblocking.Transport;
+import ru.ifmo.java.benchmark.server.schedule.SchedulingPolicy;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
+
+import java.nio.file.Path;
+
+/**
+ * Tunables of a server, defaults match the behaviour of servers created without a config.
+ */
+public class ServerConfig {
+    private int threads = 4;
+    private int eventLoopThreads = 2;
+    private int requestWindow = 4;
+    private long inlineThresholdNanos = 0;
+    private SocketOptions socketOptions = new SocketOptions();
+    private int acceptors = 1;
+    private long responseCacheBytes = 0;
+    private SortAlgorithm sortAlgorithm = SortAlgorithm.GNOME;
+    private long maxStreamBytes = 256L << 20;
+    private int streamChunkSize = 1 << 16;
+    private int maxFrameSize = 64 << 20;
+    private long connectionMemoryBytes = 128L << 20;
+    private long memoryBytes = Runtime.getRuntime().maxMemory() / 2;
+    private Path traceDirectory = null;
+    private SchedulingPolicy schedulingPolicy = SchedulingPolicy.FIFO;
+    private double rateLimit = 0;
+    private long rateBurst = 1 << 16;
+    private Transport transport = Transport.NIO;
+    private ThreadPlacement threadPlacement = ThreadPlacement.UNPINNED;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public ServerConfig setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Number of event loops reading and writing connections of the Netty server, as many as the selector threads
+     * of the non-blocking server by default, other servers ignore it
+     */
+    public ServerConfig setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+        return this;
+    }
+
+    public int getRequestWindow() {
+        return requestWindow;
+    }
+
+    /**
+     * Requests of a connection the reactive server reads ahead of written responses, other servers ignore it
+     */
+    public ServerConfig setRequestWindow(int requestWindow) {
+        this.requestWindow = requestWindow;
+        return this;
+    }
+
+    public long getInlineThresholdNanos() {
+        return inlineThresholdNanos;
+    }
+
+    /**
+     * Requests expected to be processed faster are processed by the I/O thread of the non-blocking and async servers
+     * instead of the working pool, zero disables inline processing
+     */
+    public ServerConfig setInlineThresholdNanos(long inlineThresholdNanos) {
+        this.inlineThresholdNanos = inlineThresholdNanos;
+        return this;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * Number of accept threads of blocking servers. On Linux each of them listens on its own SO_REUSEPORT socket,
+     * elsewhere they share a single listening socket.
+     */
+    public ServerConfig setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+        return this;
+    }
+
+    public long getResponseCacheBytes() {
+        return responseCacheBytes;
+    }
+
+    /**
+     * Memory bound of the response cache, zero disables the cache
+     */
+    public ServerConfig setResponseCacheBytes(long responseCacheBytes) {
+        this.responseCacheBytes = responseCacheBytes;
+        return this;
+    }
+
+    public SortAlgorithm getSortAlgorithm() {
+        return sortAlgorithm;
+    }
+
+    /**
+     * Algorithm of {@code SortArrayRequest}, gnome sort is the reference workload
+     */
+    public ServerConfig setSortAlgorithm(SortAlgorithm sortAlgorithm) {
+        this.sortAlgorithm = sortAlgorithm;
+        return this;
+    }
+
+    public long getMaxStreamBytes() {
+        return maxStreamBytes;
+    }
+
+    /**
+     * Memory bound of a chunked array of a single connection, the connection is closed when it is exceeded
+     */
+    public ServerConfig setMaxStreamBytes(long maxStreamBytes) {
+        this.maxStreamBytes = maxStreamBytes;
+        return this;
+    }
+
+    public int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    /**
+     * Number of items in chunks of streamed responses
+     */
+    public ServerConfig setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+        return this;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Connections sending a larger length prefix are closed
+     */
+    public ServerConfig setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+        return this;
+    }
+
+    public long getConnectionMemoryBytes() {
+        return connectionMemoryBytes;
+    }
+
+    /**
+     * Budget of buffered requests and responses of a connection, reading from the connection stops when it is exceeded
+     */
+    public ServerConfig setConnectionMemoryBytes(long connectionMemoryBytes) {
+        this.connectionMemoryBytes = connectionMemoryBytes;
+        return this;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Budget of buffered requests and responses of all connections, half of the heap by default
+     */
+    public ServerConfig setMemoryBytes(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+        return this;
+    }
+
+    public Path getTraceDirectory() {
+        return traceDirectory;
+    }
+
+    /**
+     * Directory of request traces, every server writes {@code <type>-<port>.trace} there; {@code null} disables tracing
+     */
+    public ServerConfig setTraceDirectory(Path traceDirectory) {
+        this.traceDirectory = traceDirectory;
+        return this;
+    }
+
+    public SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+
+    /**
+     * Order of queued requests within a priority class, the naive blocking server has no queue
+     */
+    public ServerConfig setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public long getRateBurst() {
+        return rateBurst;
+    }
+
+    /**
+     * Token bucket of every connection, requests exceeding it wait before they are queued
+     *
+     * @param itemsPerSecond array items a connection may send per second, zero disables the limit
+     * @param burstItems     array items a connection may send at once after it was idle
+     */
+    public ServerConfig setRateLimit(double itemsPerSecond, long burstItems) {
+        this.rateLimit = itemsPerSecond;
+        this.rateBurst = burstItems;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Selectors and channels of the non-blocking and Netty servers, other servers ignore it
+     */
+    public ServerConfig setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public ThreadPlacement getThreadPlacement() {
+        return threadPlacement;
+    }
+
+    /**
+     * CPUs of the working pool of every server and of the I/O threads of the non-blocking, Netty and reactive servers
+     */
+    public ServerConfig setThreadPlacement(ThreadPlacement threadPlacement) {
+        this.threadPlacement = threadPlacement;
+        return this;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * How idle workers of every server and selector loops of the non-blocking and reactive servers wait
+     */
+    public ServerConfig setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    public ServerConfig setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+        return this;
+    }
+}
@@ -0,0 +1,87 @@
+package ru.ifmo.java.benchmark.server.affinity;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+
+/**
+ * Set of CPUs in the list format of {@code taskset -c} and of Linux sysfs, e.g. {@code 0-3,8,10-11}.
+ */
+public final class CpuSet {
+    private static final Path NODES = Paths.get("/sys/devices/system/node");
+
+    private final BitSet cpus;
+
+    private CpuSet(BitSet cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the list is malformed or empty
+     */
+    public static CpuSet parse(String list) {
+        BitSet cpus = new BitSet();
+        try {
+            for (String range : list.trim().split(",")) {
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    cpus.set(Integer.parseInt(range.trim()));
+                } else {
+                    cpus.set(Integer.parseInt(range.substring(0, dash).trim()), Integer.parseInt(range.substring(dash + 1).trim()) + 1);
+                }
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid CPU list " + list, e);
+        }
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("Empty CPU list " + list);
+        }
+        return new CpuSet(cpus);
+    }
+
+    /**
+     * @return number of NUMA nodes, 1 if the topology is unknown
+     */
+    public static int nodeCount() {
+        int nodes = 0;
+        while (Files.isDirectory(NODES.resolve("node" + nodes))) {
+            nodes++;
+        }
+        return Math.max(nodes, 1);
+    }
+
+    /**
+     * @return CPUs of the NUMA node, all available CPUs if the topology is unknown
+     */
+    public static CpuSet ofNode(int node) {
+        try {
+            return parse(new String(Files.readAllBytes(NODES.resolve("node" + node).resolve("cpulist")), StandardCharsets.US_ASCII));
+        } catch (IOException | IllegalArgumentException e) {
+            return parse("0-" + (Runtime.getRuntime().availableProcessors() - 1));
+        }
+    }
+
+    public BitSet toBitSet() {
+        return (BitSet) cpus.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int begin = cpus.nextSetBit(0); begin >= 0; begin = cpus.nextSetBit(begin)) {
+            int end = cpus.nextClearBit(begin) - 1;
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(begin);
+            if (end > begin) {
+                builder.append('-').append(end);
+            }
+            begin = end + 1;
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package ru.ifmo.java.benchmark.server.affinity;
+
+import net.openhft.affinity.Affinity;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CPUs of the I/O threads (selectors, event loops) and of the working pool of a server.
+ * Threads are pinned with the affinity library when they start, which works on Linux only,
+ * elsewhere the threads run unpinned.
+ */
+public final class ThreadPlacement {
+    private static final Logger logger = Logger.getLogger(ThreadPlacement.class.getName());
+
+    public static final ThreadPlacement UNPINNED = new ThreadPlacement(null, null);
+
+    // Null if the threads are not pinned
+    private final CpuSet ioCpus;
+    private final CpuSet workerCpus;
+    private final LongAdder pinnedThreads = new LongAdder();
+
+    public ThreadPlacement(CpuSet ioCpus, CpuSet workerCpus) {
+        this.ioCpus = ioCpus;
+        this.workerCpus = workerCpus;
+    }
+
+    /**
+     * I/O threads and the working pool share the CPUs of the NUMA node, so requests are sorted where they are read
+     */
+    public static ThreadPlacement numaLocal(int node) {
+        CpuSet cpus = CpuSet.ofNode(node);
+        return new ThreadPlacement(cpus, cpus);
+    }
+
+    public ThreadFactory ioThreads() {
+        return pinning(ioCpus);
+    }
+
+    public ThreadFactory workerThreads() {
+        return pinning(workerCpus);
+    }
+
+    private ThreadFactory pinning(CpuSet cpus) {
+        ThreadFactory threads = Executors.defaultThreadFactory();
+        if (cpus == null) {
+            return threads;
+        }
+        return runnable -> threads.newThread(() -> {
+            try {
+                Affinity.setAffinity(cpus.toBitSet());
+                pinnedThreads.increment();
+            } catch (RuntimeException | LinkageError e) {
+                logger.log(Level.WARNING, "Thread can not be pinned to CPUs " + cpus, e);
+            }
+            runnable.run();
+        });
+    }
+
+    /**
+     * Threads of all servers with this placement pinned so far
+     */
+    public long getPinnedThreads() {
+        return pinnedThreads.sum();
+    }
+
+    @Override
+    public String toString() {
+        if (ioCpus == null && workerCpus == null) {
+            return "unpinned";
+        }
+        return "io=" + (ioCpus == null ? "any" : ioCpus) + " workers=" + (workerCpus == null ? "any" : workerCpus);
+    }
+}
@@ -1,7 +1,8 @@
 package ru.ifmo.java.benchmark.server.async;
 
-import ru.ifmo.java.benchmark.protocol.Protocol;
+import ru.ifmo.java.benchmark.server.Connection;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -9,18 +10,24 @@ import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AsyncServer extends Server {
     final private ExecutorService workingPool;
     AsynchronousServerSocketChannel asynchronousServerSocketChannel;
 
+    public AsyncServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.ASYNC, serverHost, serverPort, config);
+        asynchronousServerSocketChannel = config.getSocketOptions().bind(AsynchronousServerSocketChannel.open(), new InetSocketAddress(serverHost, serverPort));
+        workingPool = createWorkingPool(config.getThreads());
+    }
+
     public AsyncServer(String serverHost, int serverPort, int threads) throws IOException {
-        super(ServerType.ASYNC, serverHost, serverPort);
-        asynchronousServerSocketChannel = AsynchronousServerSocketChannel.open().bind(new InetSocketAddress(serverHost, serverPort));
-        workingPool = Executors.newFixedThreadPool(threads);
+        this(serverHost, serverPort, new ServerConfig().setThreads(threads));
     }
 
     public AsyncServer(String serverHost, int serverPort) throws IOException {
@@ -33,7 +40,14 @@ public class AsyncServer extends Server {
             @Override
             public void completed(AsynchronousSocketChannel result, AsynchronousServerSocketChannel attachment) {
                 asynchronousServerSocketChannel.accept(asynchronousServerSocketChannel, this);
-                startListenSize(result);
+                metrics.connectionAccepted();
+                try {
+                    config.getSocketOptions().applyTo(result);
+                } catch (IOException e) {
+                    closeConnection(result);
+                    return;
+                }
+                startListenSize(result, newConnection(), new ChannelOutput(result));
             }
 
             @Override
@@ -46,94 +60,170 @@ public class AsyncServer extends Server {
         });
     }
 
-    private void startListenSize(AsynchronousSocketChannel channel) {
+    private void startListenSize(AsynchronousSocketChannel channel, Connection connection, ChannelOutput output) {
         final ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
         channel.read(sizeBuffer, channel, new CompletionHandler<Integer, AsynchronousSocketChannel>() {
             @Override
             public void completed(Integer result, AsynchronousSocketChannel attachment) {
                 if (result != 4) {
-                    try {
-                        attachment.close();
-                    } catch (IOException ignored) {
-                    }
+                    closeConnection(attachment);
                     return;
                 }
+                long readBeginTime = System.nanoTime();
                 sizeBuffer.flip();
                 int messageSize = sizeBuffer.getInt();
-                startListenMessage(attachment, ByteBuffer.allocate(messageSize));
+                if (!isValidFrameSize(messageSize)) {
+                    closeConnection(attachment);
+                    return;
+                }
+                Runnable listenMessage = () -> startListenMessage(attachment, ByteBuffer.allocate(messageSize), readBeginTime, connection, output);
+                // Otherwise the next read starts when the frame fits the memory budget
+                if (connection.getBudget().acquireOrWait(messageSize, listenMessage)) {
+                    listenMessage.run();
+                }
             }
 
             @Override
             public void failed(Throwable exc, AsynchronousSocketChannel attachment) {
-                try {
-                    attachment.close();
-                } catch (IOException ignored) {
-                }
+                closeConnection(attachment);
             }
         });
     }
 
-    private void startListenMessage(AsynchronousSocketChannel channel, ByteBuffer messageBuffer) {
+    private void startListenMessage(AsynchronousSocketChannel channel, ByteBuffer messageBuffer, long readBeginTime, Connection connection, ChannelOutput output) {
         channel.read(messageBuffer, channel, new CompletionHandler<Integer, AsynchronousSocketChannel>() {
             @Override
             public void completed(Integer result, AsynchronousSocketChannel attachment) {
-                if (messageBuffer.remaining() > 0) {
-                    startListenMessage(channel, messageBuffer);
+                if (result == -1) {
+                    connection.getBudget().release(messageBuffer.capacity());
+                    closeConnection(attachment);
+                } else if (messageBuffer.remaining() > 0) {
+                    startListenMessage(channel, messageBuffer, readBeginTime, connection, output);
                 } else {
                     messageBuffer.flip();
                     try {
-                        ClientContext clientContext = beginProcessClient(Protocol.Request.parseFrom(messageBuffer));
-                        CompletableFuture.runAsync(() -> {
+                        ClientContext clientContext = beginProcessClient(messageBuffer, readBeginTime, connection);
+                        if (processInline(clientContext)) {
+                            // The response write is started by this completion handler as well
                             processClientRequest(clientContext);
-
-                            byte[] response = endProcessClient(clientContext).toByteArray();
-                            int responseSize = 4 + response.length;
-                            ByteBuffer byteBuffer = ByteBuffer.allocate(responseSize);
-                            byteBuffer.putInt(response.length);
-                            byteBuffer.put(response);
-                            byteBuffer.flip();
-
-                            startWritingMessage(attachment, byteBuffer);
-                        }, workingPool);
-                        startListenSize(channel);
+                            if (clientContext.hasResponse()) {
+                                output.add(clientContext);
+                            }
+                        } else {
+                            CompletableFuture.runAsync(() -> {
+                                processClientRequest(clientContext);
+                                if (clientContext.hasResponse()) {
+                                    output.add(clientContext);
+                                }
+                            }, workerFor(clientContext));
+                        }
+                        startListenSize(channel, connection, output);
                     } catch (IOException e) {
-                        e.printStackTrace();
+                        closeConnection(attachment);
                     }
                 }
             }
 
             @Override
             public void failed(Throwable exc, AsynchronousSocketChannel attachment) {
-                try {
-                    attachment.close();
-                } catch (IOException ignored) {
-                }
+                connection.getBudget().release(messageBuffer.capacity());
+                closeConnection(attachment);
             }
         });
     }
 
-    private void startWritingMessage(AsynchronousSocketChannel channel, ByteBuffer messageBuffer) {
-        channel.write(messageBuffer, channel, new CompletionHandler<Integer, AsynchronousSocketChannel>() {
+    private void startWritingMessage(ChannelOutput output, ByteBuffer messageBuffer, ClientContext clientContext) {
+        output.channel.write(messageBuffer, output.channel, new CompletionHandler<Integer, AsynchronousSocketChannel>() {
             @Override
             public void completed(Integer result, AsynchronousSocketChannel attachment) {
                 if (messageBuffer.remaining() > 0) {
-                    startWritingMessage(channel, messageBuffer);
+                    startWritingMessage(output, messageBuffer, clientContext);
+                } else {
+                    finishProcessClient(clientContext, messageBuffer);
+                    ByteBuffer next = serializeNextResponse(clientContext);
+                    if (next != null) {
+                        beginWriteResponse(clientContext, next);
+                        startWritingMessage(output, next, clientContext);
+                    } else {
+                        output.writeNext();
+                    }
                 }
             }
 
             @Override
             public void failed(Throwable exc, AsynchronousSocketChannel attachment) {
-                try {
-                    attachment.close();
-                } catch (IOException ignored) {
-                }
+                abortResponse(clientContext, messageBuffer);
+                closeConnection(attachment);
+                // Discards the queued responses and gives the ownership up, so responses added later are discarded too
+                output.writeNext();
             }
         });
     }
 
+    private void closeConnection(AsynchronousSocketChannel channel) {
+        synchronized (channel) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        metrics.connectionClosed();
+    }
+
+    /**
+     * Responses of a connection. A channel allows a single pending write, so responses which are ready
+     * while another one is written wait in the queue and are written in the order they are ready.
+     */
+    private class ChannelOutput {
+        final AsynchronousSocketChannel channel;
+        final Queue<ClientContext> responses = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean writing = new AtomicBoolean(false);
+
+        ChannelOutput(AsynchronousSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void add(ClientContext clientContext) {
+            responses.add(clientContext);
+            if (writing.compareAndSet(false, true)) {
+                writeNext();
+            }
+        }
+
+        /**
+         * Must be called by the owner of the write, starts the next write or gives the ownership up.
+         */
+        void writeNext() {
+            while (true) {
+                ClientContext clientContext;
+                while ((clientContext = responses.poll()) != null) {
+                    if (!channel.isOpen()) {
+                        discardResponse(clientContext);
+                        continue;
+                    }
+                    ByteBuffer byteBuffer = serializeResponse(clientContext);
+                    if (byteBuffer != null) {
+                        beginWriteResponse(clientContext, byteBuffer);
+                        startWritingMessage(this, byteBuffer, clientContext);
+                        return;
+                    }
+                }
+                writing.set(false);
+                // A response added after the queue was found empty
+                if (responses.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         asynchronousServerSocketChannel.close();
         workingPool.shutdown();
+        super.close();
     }
 }
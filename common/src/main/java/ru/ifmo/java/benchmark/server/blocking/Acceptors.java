@@ -0,0 +1,105 @@
+package ru.ifmo.java.benchmark.server.blocking;
+
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Accept loops of the blocking servers. With several acceptors on Linux every acceptor listens on its own
+ * SO_REUSEPORT socket and the kernel balances incoming connections, elsewhere acceptors share one listening socket.
+ */
+class Acceptors {
+    private final List<ServerSocket> serverSockets = new ArrayList<>();
+    private final SocketOptions socketOptions;
+    private final ServerMetrics metrics;
+    private final int acceptors;
+
+    Acceptors(int serverPort, ServerConfig config, ServerMetrics metrics) throws IOException {
+        this.socketOptions = config.getSocketOptions();
+        this.metrics = metrics;
+        this.acceptors = Math.max(1, config.getAcceptors());
+
+        InetSocketAddress address = new InetSocketAddress(serverPort);
+        if (acceptors > 1 && SocketOptions.isReusePortSupported() && System.getProperty("os.name").toLowerCase().contains("linux")) {
+            SocketOptions reusePortOptions = socketOptions.copy().setReusePort(true);
+            for (int i = 0; i < acceptors; i++) {
+                serverSockets.add(reusePortOptions.bind(address));
+            }
+        } else {
+            serverSockets.add(socketOptions.bind(address));
+        }
+        metrics.setAcceptors(acceptors);
+    }
+
+    /**
+     * Runs accept loops until listening sockets are closed, one of the loops runs in the calling thread.
+     * Accepted sockets are closed on exit.
+     */
+    void run(Handler handler) {
+        List<Socket> connections = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i < acceptors; i++) {
+            final int acceptor = i;
+            Thread thread = new Thread(() -> acceptLoop(acceptor, handler, connections), "acceptor-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            acceptLoop(0, handler, connections);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            synchronized (connections) {
+                connections.forEach(socket -> {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                });
+            }
+        }
+    }
+
+    private void acceptLoop(int acceptor, Handler handler, List<Socket> connections) {
+        ServerSocket serverSocket = serverSockets.get(acceptor % serverSockets.size());
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                metrics.connectionAccepted(acceptor);
+                connections.add(socket);
+                socketOptions.applyTo(socket);
+                handler.handle(socket);
+            }
+        } catch (IOException | RejectedExecutionException ignored) {
+        }
+    }
+
+    void close() throws IOException {
+        IOException exception = null;
+        for (ServerSocket serverSocket : serverSockets) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    interface Handler {
+        void handle(Socket socket) throws IOException;
+    }
+}
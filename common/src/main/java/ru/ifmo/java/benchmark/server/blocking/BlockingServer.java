@@ -1,27 +1,30 @@
 package ru.ifmo.java.benchmark.server.blocking;
 
-import ru.ifmo.java.benchmark.protocol.Protocol;
 import ru.ifmo.java.benchmark.protocol.ProtocolUtils;
+import ru.ifmo.java.benchmark.server.Connection;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 import java.util.concurrent.*;
 
 public class BlockingServer extends Server {
-    final private ServerSocket serverSocket;
+    final private Acceptors acceptors;
     final private ExecutorService listenerPool = Executors.newCachedThreadPool();
     final private ExecutorService workingPool;
 
+    public BlockingServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.BLOCKING, serverHost, serverPort, config);
+        acceptors = new Acceptors(serverPort, config, metrics);
+        workingPool = createWorkingPool(config.getThreads());
+    }
+
     public BlockingServer(String serverHost, int serverPort, int threads) throws IOException {
-        super(ServerType.BLOCKING, serverHost, serverPort);
-        serverSocket = new ServerSocket(serverPort);
-        workingPool = Executors.newFixedThreadPool(threads);
+        this(serverHost, serverPort, new ServerConfig().setThreads(threads));
     }
 
     public BlockingServer(String serverHost, int serverPort) throws IOException {
@@ -30,34 +33,21 @@ public class BlockingServer extends Server {
 
     @Override
     public void run() {
-        List<Socket> connections = new ArrayList<>();
-        try {
-            while (true) {
-                Socket socket = serverSocket.accept();
-                connections.add(socket);
-                listenerPool.submit(new Listener(socket));
-            }
-        } catch (IOException | RejectedExecutionException ignored) {
-        } finally {
-            connections.forEach(socket -> {
-                try {
-                    socket.close();
-                } catch (IOException ignored) {
-                }
-            });
-        }
+        acceptors.run(socket -> listenerPool.submit(new Listener(socket)));
     }
 
     @Override
     public void close() throws IOException {
         listenerPool.shutdown();
-        serverSocket.close();
+        acceptors.close();
+        super.close();
     }
 
     private class Listener implements Runnable {
         final InputStream inputStream;
         final OutputStream outputStream;
         final Socket socket;
+        final Connection connection = newConnection();
 
         final ExecutorService singleExecutor = Executors.newSingleThreadExecutor();
 
@@ -74,6 +64,7 @@ public class BlockingServer extends Server {
                     byte[] sizeBuffer = new byte[4];
 
                     int count = inputStream.read(sizeBuffer);
+                    long readBeginTime = System.nanoTime();
 
                     if (count != 4) {
                         socket.close();
@@ -81,30 +72,37 @@ public class BlockingServer extends Server {
                     }
 
                     int messageSize = ProtocolUtils.bytesToInt(sizeBuffer);
+                    if (!isValidFrameSize(messageSize)) {
+                        socket.close();
+                        break;
+                    }
+                    acquireInput(connection, messageSize);
                     byte[] messageBuffer = new byte[messageSize];
 
-                    count = ProtocolUtils.read(inputStream, messageBuffer);
+                    try {
+                        count = ProtocolUtils.read(inputStream, messageBuffer);
+                    } catch (IOException e) {
+                        count = -1;
+                    }
                     if (count != messageSize) {
+                        connection.getBudget().release(messageSize);
                         socket.close();
                         break;
                     }
 
-                    ClientContext clientContext = beginProcessClient(Protocol.Request.parseFrom(messageBuffer));
+                    ClientContext clientContext = beginProcessClient(ByteBuffer.wrap(messageBuffer), readBeginTime, connection);
 
-                    CompletableFuture.runAsync(() -> processClientRequest(clientContext), workingPool).thenRunAsync(() -> {
-                        Protocol.Response response = endProcessClient(clientContext);
+                    CompletableFuture.runAsync(() -> processClientRequest(clientContext), workerFor(clientContext)).thenRunAsync(() -> {
                         try {
-                            byte[] responseBytes = response.toByteArray();
-                            byte[] responseSizeBytes = ProtocolUtils.intToBytes(responseBytes.length);
-
-                            outputStream.write(responseSizeBytes);
-                            outputStream.write(responseBytes);
+                            writeResponse(clientContext, outputStream);
                         } catch (IOException e) {
                             throw new CompletionException(e);
                         }
                     }, singleExecutor);
                 }
-            } catch (IOException ignored) {
+            } catch (IOException | InterruptedException ignored) {
+            } finally {
+                metrics.connectionClosed();
             }
         }
     }
@@ -1,59 +1,48 @@
 package ru.ifmo.java.benchmark.server.blocking;
 
-import ru.ifmo.java.benchmark.protocol.Protocol;
 import ru.ifmo.java.benchmark.protocol.ProtocolUtils;
+import ru.ifmo.java.benchmark.server.Connection;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 
 public class NaiveBlockingServer extends Server {
-    final private ServerSocket serverSocket;
+    final private Acceptors acceptors;
     final private ExecutorService pool = Executors.newCachedThreadPool();
 
+    public NaiveBlockingServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.NAIVE_BLOCKING, serverHost, serverPort, config);
+        acceptors = new Acceptors(serverPort, config, metrics);
+    }
+
     public NaiveBlockingServer(String serverHost, int serverPort) throws IOException {
-        super(ServerType.NAIVE_BLOCKING, serverHost, serverPort);
-        serverSocket = new ServerSocket(serverPort);
+        this(serverHost, serverPort, new ServerConfig());
     }
 
     @Override
     public void run() {
-        List<Socket> connections = new ArrayList<>();
-        try {
-            while (true) {
-                Socket socket = serverSocket.accept();
-                connections.add(socket);
-                pool.submit(new Worker(socket));
-            }
-        } catch (IOException | RejectedExecutionException ignored) {
-        } finally {
-            connections.forEach(socket -> {
-                try {
-                    socket.close();
-                } catch (IOException ignored) {
-                }
-            });
-        }
+        acceptors.run(socket -> pool.submit(new Worker(socket)));
     }
 
     @Override
     public void close() throws IOException {
         pool.shutdown();
-        serverSocket.close();
+        acceptors.close();
+        super.close();
     }
 
     private class Worker implements Runnable {
         final InputStream inputStream;
         final OutputStream outputStream;
         final Socket socket;
+        final Connection connection = newConnection();
 
         public Worker(Socket socket) throws IOException {
             inputStream = socket.getInputStream();
@@ -68,31 +57,38 @@ public class NaiveBlockingServer extends Server {
                     byte[] sizeBuffer = new byte[4];
 
                     int count = inputStream.read(sizeBuffer);
+                    long readBeginTime = System.nanoTime();
                     if (count != 4) {
                         socket.close();
                         break;
                     }
 
                     int messageSize = ProtocolUtils.bytesToInt(sizeBuffer);
+                    if (!isValidFrameSize(messageSize)) {
+                        socket.close();
+                        break;
+                    }
+                    acquireInput(connection, messageSize);
                     byte[] messageBuffer = new byte[messageSize];
 
-                    count = ProtocolUtils.read(inputStream, messageBuffer);
+                    try {
+                        count = ProtocolUtils.read(inputStream, messageBuffer);
+                    } catch (IOException e) {
+                        count = -1;
+                    }
                     if (count != messageSize) {
+                        connection.getBudget().release(messageSize);
                         socket.close();
                         break;
                     }
 
-                    ClientContext clientContext = beginProcessClient(Protocol.Request.parseFrom(messageBuffer));
+                    ClientContext clientContext = beginProcessClient(ByteBuffer.wrap(messageBuffer), readBeginTime, connection);
                     processClientRequest(clientContext);
-                    Protocol.Response response = endProcessClient(clientContext);
-
-                    byte[] responseBytes = response.toByteArray();
-                    byte[] responseSizeBytes = ProtocolUtils.intToBytes(responseBytes.length);
-
-                    outputStream.write(responseSizeBytes);
-                    outputStream.write(responseBytes);
+                    writeResponse(clientContext, outputStream);
                 }
-            } catch (IOException ignored) {
+            } catch (IOException | InterruptedException ignored) {
+            } finally {
+                metrics.connectionClosed();
             }
         }
     }
@@ -0,0 +1,258 @@
+package ru.ifmo.java.benchmark.server.cache;
+
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memory bounded LRU cache of serialized responses keyed by the raw bytes of the request payload.
+ * Lookup scans the wire format of the request without parsing the array, so a hit skips parsing, processing and serialization.
+ */
+public class ResponseCache {
+    // LinkedHashMap entry, key and array headers
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] get(Key key) {
+        byte[] response;
+        synchronized (this) {
+            response = entries.get(key);
+        }
+        if (response == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return response;
+    }
+
+    public void put(Key key, byte[] response) {
+        long size = entrySize(key, response);
+        if (size > maxBytes) {
+            return;
+        }
+        Key storedKey = key.detach();
+        synchronized (this) {
+            byte[] previous = entries.put(storedKey, response);
+            if (previous != null) {
+                bytes -= entrySize(storedKey, previous);
+            }
+            bytes += size;
+            Iterator<Map.Entry<Key, byte[]>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<Key, byte[]> eldest = iterator.next();
+                bytes -= entrySize(eldest.getKey(), eldest.getValue());
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long entrySize(Key key, byte[] response) {
+        return ENTRY_OVERHEAD + key.payload.remaining() + response.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Payload of a request: bytes of its {@code oneof request} field. Other fields, e.g. client timestamps,
+     * differ between equal requests and are kept aside in {@link #getMetadata()}.
+     */
+    public static class Key {
+        private final ByteBuffer payload;
+        private final long hash;
+        private final byte[] metadata;
+
+        private Key(ByteBuffer payload, long hash, byte[] metadata) {
+            this.payload = payload;
+            this.hash = hash;
+            this.metadata = metadata;
+        }
+
+        /**
+         * @param message serialized {@link Protocol.Request}, its position is not changed
+         * @return {@code null} when the request has no cacheable payload
+         */
+        public static Key of(ByteBuffer message) {
+            ByteBuffer buffer = message.duplicate();
+            int fieldBegin = -1;
+            int payloadBegin = -1;
+            int payloadEnd = -1;
+            try {
+                while (buffer.hasRemaining()) {
+                    int tagBegin = buffer.position();
+                    int tag = readVarint(buffer);
+                    int fieldNumber = tag >>> 3;
+                    int wireType = tag & 7;
+                    if (fieldNumber == Protocol.Request.SORTARRAYREQUEST_FIELD_NUMBER && wireType == 2) {
+                        if (fieldBegin != -1) {
+                            // Repeated occurrences are merged by protobuf, bytes are not canonical anymore
+                            return null;
+                        }
+                        int length = readVarint(buffer);
+                        fieldBegin = tagBegin;
+                        payloadBegin = buffer.position();
+                        payloadEnd = payloadBegin + length;
+                        buffer.position(payloadEnd);
+                    } else if (!skipField(buffer, wireType)) {
+                        return null;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Malformed message, let the parser report it
+                return null;
+            }
+            if (fieldBegin == -1) {
+                return null;
+            }
+
+            ByteBuffer payload = message.duplicate();
+            payload.limit(payloadEnd).position(payloadBegin);
+            payload = payload.slice();
+
+            byte[] metadata = new byte[(fieldBegin - message.position()) + (message.limit() - payloadEnd)];
+            ByteBuffer before = message.duplicate();
+            before.limit(fieldBegin);
+            before.get(metadata, 0, fieldBegin - message.position());
+            ByteBuffer after = message.duplicate();
+            after.position(payloadEnd);
+            after.get(metadata, fieldBegin - message.position(), message.limit() - payloadEnd);
+
+            return new Key(payload, hash(payload), metadata);
+        }
+
+        /**
+         * @return serialized request without its payload field
+         */
+        public byte[] getMetadata() {
+            return metadata;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * Copies the payload out of the receive buffer, so the key can outlive it
+         */
+        Key detach() {
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload.duplicate());
+            copy.flip();
+            return new Key(copy, hash, new byte[0]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && payload.equals(key.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        private static int readVarint(ByteBuffer buffer) {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer.get();
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private static boolean skipField(ByteBuffer buffer, int wireType) {
+            switch (wireType) {
+                case 0:
+                    for (int i = 0; i < 10; i++) {
+                        if (buffer.get() >= 0) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case 1:
+                    buffer.position(buffer.position() + 8);
+                    return true;
+                case 2:
+                    int length = readVarint(buffer);
+                    buffer.position(buffer.position() + length);
+                    return true;
+                case 5:
+                    buffer.position(buffer.position() + 4);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * 64-bit multiply-rotate hash over 8-byte words, the mixing steps are borrowed from xxHash64
+         */
+        private static long hash(ByteBuffer payload) {
+            final long prime1 = 0x9E3779B185EBCA87L;
+            final long prime2 = 0xC2B2AE3D27D4EB4FL;
+            final long prime3 = 0x165667B19E3779F9L;
+
+            ByteBuffer buffer = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            long h = prime3 + buffer.remaining();
+            while (buffer.remaining() >= 8) {
+                long k = buffer.getLong() * prime2;
+                k = Long.rotateLeft(k, 31) * prime1;
+                h = Long.rotateLeft(h ^ k, 27) * prime1 + prime3;
+            }
+            while (buffer.hasRemaining()) {
+                h = Long.rotateLeft(h ^ ((buffer.get() & 0xFF) * prime3), 11) * prime1;
+            }
+            h ^= h >>> 33;
+            h *= prime2;
+            h ^= h >>> 29;
+            h *= prime3;
+            h ^= h >>> 32;
+            return h;
+        }
+    }
+}
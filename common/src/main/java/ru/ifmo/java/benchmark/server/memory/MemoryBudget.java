@@ -0,0 +1,181 @@
+package ru.ifmo.java.benchmark.server.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Bytes of buffered requests and responses. A budget of a connection is a child of the global budget,
+ * bytes acquired in a child are acquired in all its ancestors as well.
+ * <p>
+ * An acquisition which does not fit waits until enough bytes are released, acquisitions are never refused
+ * if the budget is empty so a single frame larger than the limit still makes progress.
+ */
+public class MemoryBudget {
+    private final MemoryBudget parent;
+    private final MemoryBudget root;
+    private final long limit;
+    private long used = 0;
+
+    // Only in the root, guarded by the root
+    private final List<Waiter> waiters;
+    private long waits = 0;
+
+    public MemoryBudget(long limit) {
+        this(null, limit);
+    }
+
+    private MemoryBudget(MemoryBudget parent, long limit) {
+        this.parent = parent;
+        this.root = parent == null ? this : parent.root;
+        this.limit = limit;
+        this.waiters = parent == null ? new LinkedList<>() : null;
+    }
+
+    /**
+     * @param limit bound of this child in addition to bounds of this budget
+     */
+    public MemoryBudget child(long limit) {
+        return new MemoryBudget(this, limit);
+    }
+
+    public boolean tryAcquire(long bytes) {
+        synchronized (root) {
+            if (!fits(bytes)) {
+                return false;
+            }
+            add(bytes);
+            return true;
+        }
+    }
+
+    /**
+     * Acquires bytes if they fit or schedules the acquisition.
+     *
+     * @param onAcquired called by the thread which releases enough bytes, after the bytes are acquired
+     * @return true if the bytes are acquired now, {@code onAcquired} is not called then
+     */
+    public boolean acquireOrWait(long bytes, Runnable onAcquired) {
+        synchronized (root) {
+            if (fits(bytes)) {
+                add(bytes);
+                return true;
+            }
+            root.waiters.add(new Waiter(this, bytes, onAcquired));
+            root.waits++;
+            return false;
+        }
+    }
+
+    /**
+     * Blocks until the bytes are acquired.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        CountDownLatch acquired = new CountDownLatch(1);
+        Waiter waiter;
+        synchronized (root) {
+            if (fits(bytes)) {
+                add(bytes);
+                return;
+            }
+            waiter = new Waiter(this, bytes, acquired::countDown);
+            root.waiters.add(waiter);
+            root.waits++;
+        }
+        try {
+            acquired.await();
+        } catch (InterruptedException e) {
+            synchronized (root) {
+                if (!root.waiters.remove(waiter)) {
+                    // Acquired concurrently
+                    add(-bytes);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Acquires bytes even if they do not fit, later acquisitions wait until they are released.
+     * Used for responses, which can not be delayed without delaying their requests.
+     */
+    public void forceAcquire(long bytes) {
+        synchronized (root) {
+            add(bytes);
+        }
+    }
+
+    public void release(long bytes) {
+        List<Runnable> callbacks = new ArrayList<>();
+        synchronized (root) {
+            add(-bytes);
+            Iterator<Waiter> iterator = root.waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.budget.fits(waiter.bytes)) {
+                    waiter.budget.add(waiter.bytes);
+                    iterator.remove();
+                    callbacks.add(waiter.onAcquired);
+                }
+            }
+        }
+        callbacks.forEach(Runnable::run);
+    }
+
+    private boolean fits(long bytes) {
+        for (MemoryBudget budget = this; budget != null; budget = budget.parent) {
+            if (budget.used != 0 && budget.used + bytes > budget.limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long bytes) {
+        for (MemoryBudget budget = this; budget != null; budget = budget.parent) {
+            budget.used += bytes;
+        }
+    }
+
+    public long getUsed() {
+        synchronized (root) {
+            return used;
+        }
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of acquisitions in all budgets of the tree which are waiting now
+     */
+    public int getWaiting() {
+        synchronized (root) {
+            return root.waiters.size();
+        }
+    }
+
+    /**
+     * @return number of acquisitions in all budgets of the tree which had to wait
+     */
+    public long getWaits() {
+        synchronized (root) {
+            return root.waits;
+        }
+    }
+
+    private static class Waiter {
+        final MemoryBudget budget;
+        final long bytes;
+        final Runnable onAcquired;
+
+        Waiter(MemoryBudget budget, long bytes, Runnable onAcquired) {
+            this.budget = budget;
+            this.bytes = bytes;
+            this.onAcquired = onAcquired;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.ifmo.java.benchmark.server.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plain-text scrape endpoint, serves metrics of the given servers at {@code /metrics} on a side port.
+ */
+public class MetricsEndpoint {
+    private final HttpServer httpServer;
+    private final List<ServerMetrics> metrics;
+
+    public MetricsEndpoint(String host, int port, List<ServerMetrics> metrics) throws IOException {
+        this.metrics = new ArrayList<>(metrics);
+        httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    public String render() {
+        StringBuilder builder = new StringBuilder();
+        for (ServerMetrics serverMetrics : metrics) {
+            String labels = String.format("{server=\"%s\",port=\"%d\"}", serverMetrics.getServerType(), serverMetrics.getPort());
+            appendValue(builder, "accepted_connections_total", labels, serverMetrics.getAcceptedConnections());
+            long[] acceptedPerAcceptor = serverMetrics.getAcceptedConnectionsPerAcceptor();
+            for (int i = 0; i < acceptedPerAcceptor.length; i++) {
+                String acceptorLabels = String.format("{server=\"%s\",port=\"%d\",acceptor=\"%d\"}", serverMetrics.getServerType(), serverMetrics.getPort(), i);
+                appendValue(builder, "acceptor_accepted_connections_total", acceptorLabels, acceptedPerAcceptor[i]);
+            }
+            appendValue(builder, "open_connections", labels, serverMetrics.getOpenConnections());
+            appendValue(builder, "requests_in_flight", labels, serverMetrics.getRequestsInFlight());
+            appendValue(builder, "worker_queue_length", labels, serverMetrics.getWorkerQueueLength());
+            appendValue(builder, "rate_limited_requests_total", labels, serverMetrics.getRateLimitedRequests());
+            appendValue(builder, "backpressured_connections", labels, serverMetrics.getBackpressuredConnections());
+            appendValue(builder, "inline_requests_total", labels, serverMetrics.getInlineRequests());
+            appendValue(builder, "deadline_exceeded_total", labels, serverMetrics.getDeadlineExceeded());
+            appendValue(builder, "bytes_in_total", labels, serverMetrics.getBytesIn());
+            appendValue(builder, "bytes_out_total", labels, serverMetrics.getBytesOut());
+            appendValue(builder, "selector_loop_iterations_total", labels, serverMetrics.getSelectorLoopIterations());
+            appendValue(builder, "selector_wakeups_total", labels, serverMetrics.getSelectorWakeups());
+            appendValue(builder, "memory_used_bytes", labels, serverMetrics.getMemoryUsedBytes());
+            appendValue(builder, "memory_limit_bytes", labels, serverMetrics.getMemoryLimitBytes());
+            appendValue(builder, "paused_reads", labels, serverMetrics.getPausedReads());
+            appendValue(builder, "read_pauses_total", labels, serverMetrics.getReadPauses());
+            appendValue(builder, "cache_hits_total", labels, serverMetrics.getCacheHits());
+            appendValue(builder, "cache_misses_total", labels, serverMetrics.getCacheMisses());
+            appendValue(builder, "cache_evictions_total", labels, serverMetrics.getCacheEvictions());
+            appendValue(builder, "cache_bytes", labels, serverMetrics.getCacheBytes());
+            appendHistogram(builder, "read_time_ms", labels, serverMetrics.getReadTime());
+            appendHistogram(builder, "queue_wait_time_ms", labels, serverMetrics.getQueueWaitTime());
+            appendHistogram(builder, "process_time_ms", labels, serverMetrics.getProcessTime());
+            appendHistogram(builder, "write_time_ms", labels, serverMetrics.getWriteTime());
+        }
+        return builder.toString();
+    }
+
+    private static void appendValue(StringBuilder builder, String name, String labels, long value) {
+        builder.append("benchmark_").append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static void appendValue(StringBuilder builder, String name, String labels, double value) {
+        builder.append("benchmark_").append(name).append(labels).append(' ').append(String.format(Locale.ROOT, "%.6f", value)).append('\n');
+    }
+
+    private static void appendHistogram(StringBuilder builder, String name, String labels, Histogram.Snapshot snapshot) {
+        appendValue(builder, name + "_count", labels, snapshot.getCount());
+        appendValue(builder, name + "_mean", labels, snapshot.getMean());
+        appendValue(builder, name + "_p50", labels, snapshot.getP50());
+        appendValue(builder, name + "_p99", labels, snapshot.getP99());
+        appendValue(builder, name + "_max", labels, snapshot.getMax());
+    }
+}
@@ -0,0 +1,320 @@
+package ru.ifmo.java.benchmark.server.metrics;
+
+import ru.ifmo.java.benchmark.server.cache.ResponseCache;
+import ru.ifmo.java.benchmark.server.memory.MemoryBudget;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Live counters and phase latency histograms of a single server.
+ * Published through JMX and rendered as plain text by {@link MetricsEndpoint}.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(ServerMetrics.class.getName());
+
+    private final String serverType;
+    private final int port;
+
+    private final LongAdder acceptedConnections = new LongAdder();
+    private volatile LongAdder[] acceptedConnectionsPerAcceptor = {new LongAdder()};
+    private final AtomicLong openConnections = new AtomicLong();
+    private final AtomicLong requestsInFlight = new AtomicLong();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder selectorLoopIterations = new LongAdder();
+    private final LongAdder selectorWakeups = new LongAdder();
+    private final LongAdder deadlineExceeded = new LongAdder();
+    private final LongAdder inlineRequests = new LongAdder();
+
+    private final Histogram readTime = new Histogram();
+    private final Histogram queueWaitTime = new Histogram();
+    private final Histogram processTime = new Histogram();
+    private final Histogram writeTime = new Histogram();
+
+    private volatile LongSupplier workerQueueLength = () -> 0;
+    private volatile LongSupplier rateLimitedRequests = () -> 0;
+    private volatile LongSupplier backpressuredConnections = () -> 0;
+    private volatile ResponseCache responseCache;
+    private volatile MemoryBudget memoryBudget;
+    private ObjectName objectName;
+
+    public ServerMetrics(String serverType, int port) {
+        this.serverType = serverType;
+        this.port = port;
+    }
+
+    public void register() {
+        try {
+            objectName = new ObjectName("ru.ifmo.java.benchmark:type=Server,name=" + serverType + ",port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            objectName = null;
+            logger.log(Level.WARNING, "Unable to register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ignored) {
+        }
+        objectName = null;
+    }
+
+    public void setWorkerQueueLength(LongSupplier workerQueueLength) {
+        this.workerQueueLength = workerQueueLength;
+    }
+
+    public void setRateLimitedRequests(LongSupplier rateLimitedRequests) {
+        this.rateLimitedRequests = rateLimitedRequests;
+    }
+
+    public void setBackpressuredConnections(LongSupplier backpressuredConnections) {
+        this.backpressuredConnections = backpressuredConnections;
+    }
+
+    public void setAcceptors(int acceptors) {
+        LongAdder[] counters = new LongAdder[acceptors];
+        for (int i = 0; i < acceptors; i++) {
+            counters[i] = new LongAdder();
+        }
+        acceptedConnectionsPerAcceptor = counters;
+    }
+
+    /**
+     * @param responseCache cache of the server or {@code null} when it is disabled
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public void connectionAccepted() {
+        connectionAccepted(0);
+    }
+
+    public void connectionAccepted(int acceptor) {
+        acceptedConnections.increment();
+        acceptedConnectionsPerAcceptor[acceptor].increment();
+        openConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    public void requestStarted(long bytes) {
+        requestsInFlight.incrementAndGet();
+        bytesIn.add(bytes);
+    }
+
+    public void requestFinished(long bytes) {
+        requestsInFlight.decrementAndGet();
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Bytes of a response frame which is not the last one
+     */
+    public void bytesWritten(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void deadlineExceeded() {
+        deadlineExceeded.increment();
+    }
+
+    public void inlineRequest() {
+        inlineRequests.increment();
+    }
+
+    public void selectorLoopIteration() {
+        selectorLoopIterations.increment();
+    }
+
+    public void selectorWakeup() {
+        selectorWakeups.increment();
+    }
+
+    public void recordRead(long nanos) {
+        readTime.record(nanos);
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWaitTime.record(nanos);
+    }
+
+    public void recordProcess(long nanos) {
+        processTime.record(nanos);
+    }
+
+    public void recordWrite(long nanos) {
+        writeTime.record(nanos);
+    }
+
+    @Override
+    public String getServerType() {
+        return serverType;
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long[] getAcceptedConnectionsPerAcceptor() {
+        LongAdder[] counters = acceptedConnectionsPerAcceptor;
+        long[] values = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            values[i] = counters[i].sum();
+        }
+        return values;
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return openConnections.get();
+    }
+
+    @Override
+    public long getRequestsInFlight() {
+        return requestsInFlight.get();
+    }
+
+    @Override
+    public long getWorkerQueueLength() {
+        return workerQueueLength.getAsLong();
+    }
+
+    @Override
+    public long getRateLimitedRequests() {
+        return rateLimitedRequests.getAsLong();
+    }
+
+    @Override
+    public long getBackpressuredConnections() {
+        return backpressuredConnections.getAsLong();
+    }
+
+    @Override
+    public long getInlineRequests() {
+        return inlineRequests.sum();
+    }
+
+    @Override
+    public long getDeadlineExceeded() {
+        return deadlineExceeded.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getSelectorLoopIterations() {
+        return selectorLoopIterations.sum();
+    }
+
+    @Override
+    public long getSelectorWakeups() {
+        return selectorWakeups.sum();
+    }
+
+    @Override
+    public long getMemoryUsedBytes() {
+        MemoryBudget budget = memoryBudget;
+        return budget == null ? 0 : budget.getUsed();
+    }
+
+    @Override
+    public long getMemoryLimitBytes() {
+        MemoryBudget budget = memoryBudget;
+        return budget == null ? 0 : budget.getLimit();
+    }
+
+    @Override
+    public double getMemoryUtilization() {
+        MemoryBudget budget = memoryBudget;
+        return budget == null || budget.getLimit() == 0 ? 0 : (double) budget.getUsed() / budget.getLimit();
+    }
+
+    @Override
+    public int getPausedReads() {
+        MemoryBudget budget = memoryBudget;
+        return budget == null ? 0 : budget.getWaiting();
+    }
+
+    @Override
+    public long getReadPauses() {
+        MemoryBudget budget = memoryBudget;
+        return budget == null ? 0 : budget.getWaits();
+    }
+
+    @Override
+    public long getCacheHits() {
+        ResponseCache cache = responseCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        ResponseCache cache = responseCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        ResponseCache cache = responseCache;
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        ResponseCache cache = responseCache;
+        return cache == null ? 0 : cache.getBytes();
+    }
+
+    @Override
+    public Histogram.Snapshot getReadTime() {
+        return readTime.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getQueueWaitTime() {
+        return queueWaitTime.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getProcessTime() {
+        return processTime.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getWriteTime() {
+        return writeTime.snapshot();
+    }
+}
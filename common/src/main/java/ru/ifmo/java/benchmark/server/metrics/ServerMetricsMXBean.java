@@ -0,0 +1,80 @@
+package ru.ifmo.java.benchmark.server.metrics;
+
+public interface ServerMetricsMXBean {
+    String getServerType();
+
+    int getPort();
+
+    long getAcceptedConnections();
+
+    long[] getAcceptedConnectionsPerAcceptor();
+
+    long getOpenConnections();
+
+    long getRequestsInFlight();
+
+    long getWorkerQueueLength();
+
+    /**
+     * Requests which waited for tokens of their connection
+     */
+    long getRateLimitedRequests();
+
+    /**
+     * Connections which are not read because their responses are not written yet
+     */
+    long getBackpressuredConnections();
+
+    /**
+     * Requests processed by the I/O thread which read them
+     */
+    long getInlineRequests();
+
+    /**
+     * Requests dropped or cancelled because their deadline passed
+     */
+    long getDeadlineExceeded();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getSelectorLoopIterations();
+
+    /**
+     * Wakeups of selectors by other threads, which hand them connections or responses
+     */
+    long getSelectorWakeups();
+
+    /**
+     * Bytes of buffered requests and responses of all connections
+     */
+    long getMemoryUsedBytes();
+
+    long getMemoryLimitBytes();
+
+    double getMemoryUtilization();
+
+    /**
+     * Connections which do not read because of memory budgets
+     */
+    int getPausedReads();
+
+    long getReadPauses();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    long getCacheBytes();
+
+    Histogram.Snapshot getReadTime();
+
+    Histogram.Snapshot getQueueWaitTime();
+
+    Histogram.Snapshot getProcessTime();
+
+    Histogram.Snapshot getWriteTime();
+}
@@ -0,0 +1,330 @@
+package ru.ifmo.java.benchmark.server.netty;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import ru.ifmo.java.benchmark.net.SocketOptions;
+import ru.ifmo.java.benchmark.server.Connection;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server on Netty event loops: frames are read and responses are written by
+ * {@link ServerConfig#getEventLoopThreads()} event loops, requests are processed by the working pool.
+ * Buffers of the frame decoder and of responses are taken from the pooled allocator,
+ * requests are parsed from the decoder buffer, which is released once the response is serialized.
+ */
+public class NettyServer extends Server {
+    final private EventLoopGroup bossGroup;
+    final private EventLoopGroup eventLoopGroup;
+    final private ExecutorService workingPool;
+    final private Channel serverChannel;
+
+    public NettyServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.NETTY, serverHost, serverPort, config);
+        SelectorProvider provider = config.getTransport().getProvider();
+        bossGroup = new NioEventLoopGroup(1, config.getThreadPlacement().ioThreads(), provider);
+        eventLoopGroup = new NioEventLoopGroup(config.getEventLoopThreads(), config.getThreadPlacement().ioThreads(), provider);
+        workingPool = createWorkingPool(config.getThreads());
+
+        SocketOptions socketOptions = config.getSocketOptions();
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, eventLoopGroup)
+                .channelFactory((ChannelFactory<NioServerSocketChannel>) () -> new NioServerSocketChannel(provider))
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        metrics.connectionAccepted();
+                        Connection connection = newConnection();
+                        channel.pipeline().addLast(new FrameDecoder(connection), new RequestHandler(connection));
+                    }
+                });
+        if (socketOptions.getBacklog() > 0) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, socketOptions.getBacklog());
+        }
+        if (socketOptions.getReceiveBufferSize() > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, socketOptions.getReceiveBufferSize());
+        }
+        if (socketOptions.getTcpNoDelay() != null) {
+            bootstrap.childOption(ChannelOption.TCP_NODELAY, socketOptions.getTcpNoDelay());
+        }
+        if (socketOptions.getSendBufferSize() > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, socketOptions.getSendBufferSize());
+        }
+
+        ChannelFuture bound = bootstrap.bind(new InetSocketAddress(serverHost, serverPort)).awaitUninterruptibly();
+        if (!bound.isSuccess()) {
+            shutdownEventLoops();
+            workingPool.shutdown();
+            throw new IOException("Can not bind " + serverHost + ":" + serverPort, bound.cause());
+        }
+        serverChannel = bound.channel();
+    }
+
+    public NettyServer(String serverHost, int serverPort, int threads) throws IOException {
+        this(serverHost, serverPort, new ServerConfig().setThreads(threads));
+    }
+
+    public NettyServer(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, 4);
+    }
+
+    /**
+     * Blocks until the server is closed.
+     */
+    @Override
+    public void run() {
+        serverChannel.closeFuture().awaitUninterruptibly();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close().awaitUninterruptibly();
+        shutdownEventLoops();
+        workingPool.shutdown();
+        super.close();
+    }
+
+    private void shutdownEventLoops() {
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Splits the input into frames by the 4-byte big-endian length prefix and strips the prefix.
+     * Frames exceeding the frame size limit or with a negative length close the connection.
+     * The body of a frame is buffered only after its size is acquired from the memory budget,
+     * reading stops while the acquisition waits. All methods are called by the event loop of the channel.
+     */
+    private class FrameDecoder extends ByteToMessageDecoder {
+        final Connection connection;
+        // Time when the first byte of the current frame was received, zero between frames
+        private long readBeginTime;
+        // Size of the frame whose body is read, -1 while the length prefix is read
+        private int messageSize = -1;
+        // Set while the acquisition of the body waits for the budget
+        private boolean paused;
+
+        FrameDecoder(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            if (readBeginTime == 0) {
+                readBeginTime = System.nanoTime();
+            }
+            while (!paused) {
+                if (messageSize < 0) {
+                    if (in.readableBytes() < 4) {
+                        return;
+                    }
+                    int size = in.readInt();
+                    if (!isValidFrameSize(size)) {
+                        in.skipBytes(in.readableBytes());
+                        ctx.close();
+                        return;
+                    }
+                    messageSize = size;
+                    if (!connection.getBudget().acquireOrWait(size, () -> ctx.executor().execute(() -> resume(ctx)))) {
+                        // Stop reading until the frame fits the budget
+                        paused = true;
+                        ctx.channel().config().setAutoRead(false);
+                        return;
+                    }
+                }
+                if (in.readableBytes() < messageSize) {
+                    return;
+                }
+                out.add(new Frame(in.readRetainedSlice(messageSize), readBeginTime));
+                messageSize = -1;
+                readBeginTime = in.isReadable() ? System.nanoTime() : 0;
+            }
+        }
+
+        private void resume(ChannelHandlerContext ctx) {
+            paused = false;
+            if (!ctx.channel().isActive()) {
+                connection.getBudget().release(messageSize);
+                messageSize = -1;
+                return;
+            }
+            ctx.channel().config().setAutoRead(true);
+            try {
+                // The body may be buffered already
+                channelRead(ctx, Unpooled.EMPTY_BUFFER);
+            } catch (Exception e) {
+                ctx.close();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            super.channelInactive(ctx);
+            // The body of a paused frame is released by resume
+            if (messageSize >= 0 && !paused) {
+                connection.getBudget().release(messageSize);
+                messageSize = -1;
+            }
+        }
+    }
+
+    private static class Frame {
+        final ByteBuf data;
+        final long readBeginTime;
+
+        Frame(ByteBuf data, long readBeginTime) {
+            this.data = data;
+            this.readBeginTime = readBeginTime;
+        }
+    }
+
+    /**
+     * Requests of a connection, their size is acquired from the memory budget by the frame decoder.
+     * All methods are called by the event loop of the channel.
+     */
+    private class RequestHandler extends ChannelInboundHandlerAdapter {
+        final Connection connection;
+        ChannelOutput output;
+
+        RequestHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            output = new ChannelOutput(ctx.channel());
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            Frame frame = (Frame) msg;
+            // Parsed in place, the slice has the capacity of the frame which is acquired from the budget
+            ByteBuffer message = frame.data.nioBuffer().slice();
+            ClientContext clientContext;
+            try {
+                clientContext = beginProcessClient(message, frame.readBeginTime, connection);
+            } catch (IOException e) {
+                frame.data.release();
+                ctx.close();
+                return;
+            }
+            // Contexts refer to the request until the response is serialized
+            clientContext.onInputReleased(frame.data::release);
+            CompletableFuture.runAsync(() -> {
+                processClientRequest(clientContext);
+                if (clientContext.hasResponse()) {
+                    ctx.executor().execute(() -> output.add(clientContext));
+                }
+            }, workerFor(clientContext));
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            metrics.connectionClosed();
+            output.discard();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // Invalid frames and I/O errors
+            ctx.close();
+        }
+    }
+
+    /**
+     * Responses of a connection, written one frame at a time in the order they are ready.
+     * All methods are called by the event loop of the channel.
+     */
+    private class ChannelOutput {
+        final Channel channel;
+        final Queue<ClientContext> responses = new ArrayDeque<>();
+        boolean writing;
+
+        ChannelOutput(Channel channel) {
+            this.channel = channel;
+        }
+
+        void add(ClientContext clientContext) {
+            responses.add(clientContext);
+            if (!writing) {
+                writeNext();
+            }
+        }
+
+        void writeNext() {
+            ClientContext clientContext;
+            while ((clientContext = responses.poll()) != null) {
+                if (!channel.isActive()) {
+                    discardResponse(clientContext);
+                    continue;
+                }
+                ByteBuffer response = serializeResponse(clientContext);
+                if (response != null) {
+                    writing = true;
+                    write(clientContext, response);
+                    return;
+                }
+            }
+            writing = false;
+        }
+
+        private void write(ClientContext clientContext, ByteBuffer response) {
+            beginWriteResponse(clientContext, response);
+            ByteBuf buffer = channel.alloc().directBuffer(response.limit());
+            buffer.writeBytes(response.duplicate());
+            channel.writeAndFlush(buffer).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    abortResponse(clientContext, response);
+                    channel.close();
+                    writing = false;
+                    discard();
+                    return;
+                }
+                finishProcessClient(clientContext, response);
+                ByteBuffer next = serializeNextResponse(clientContext);
+                if (next != null) {
+                    write(clientContext, next);
+                } else {
+                    writeNext();
+                }
+            });
+        }
+
+        void discard() {
+            ClientContext clientContext;
+            while ((clientContext = responses.poll()) != null) {
+                discardResponse(clientContext);
+            }
+        }
+    }
+}
@@ -1,38 +1,59 @@
 package ru.ifmo.java.benchmark.server.nonblocking;
 
-import ru.ifmo.java.benchmark.protocol.Protocol;
+import ru.ifmo.java.benchmark.server.Connection;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.nio.channels.spi.SelectorProvider;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NonBlockingServer extends Server {
     final private ServerSocketChannel serverSocketChannel;
-    final private Selector inputSelector = Selector.open();
-    final private Selector outputSelector = Selector.open();
-    final private ExecutorService inputSelectorExecutor = Executors.newSingleThreadExecutor();
-    final private ExecutorService outputSelectorExecutor = Executors.newSingleThreadExecutor();
+    final private Selector inputSelector;
+    final private Selector outputSelector;
+    final private ExecutorService inputSelectorExecutor;
+    final private ExecutorService outputSelectorExecutor;
     final private ExecutorService workingPool;
+    // Accepted connections to be registered by the input selector
+    final private SelectorQueue<ChannelInputContext> acceptedInputs;
+    // Connections whose frames fit the memory budget again
+    final private SelectorQueue<SelectionKey> resumedKeys;
+    // Connections closed by other threads, whose reservations are released by the input selector
+    final private SelectorQueue<ChannelInputContext> closedInputs;
+    // Connections which got responses to write while they had none
+    final private SelectorQueue<ChannelOutputContext> writableOutputs;
 
-    Lock inputSelectorLock = new ReentrantLock();
-    Lock outputSelectorLock = new ReentrantLock();
+    public NonBlockingServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.NON_BLOCKING, serverHost, serverPort, config);
+        SelectorProvider provider = config.getTransport().getProvider();
+        inputSelector = provider.openSelector();
+        outputSelector = provider.openSelector();
+        acceptedInputs = new SelectorQueue<>(inputSelector, metrics);
+        resumedKeys = new SelectorQueue<>(inputSelector, metrics);
+        closedInputs = new SelectorQueue<>(inputSelector, metrics);
+        writableOutputs = new SelectorQueue<>(outputSelector, metrics);
+        inputSelectorExecutor = Executors.newSingleThreadExecutor(config.getThreadPlacement().ioThreads());
+        outputSelectorExecutor = Executors.newSingleThreadExecutor(config.getThreadPlacement().ioThreads());
+        serverSocketChannel = config.getSocketOptions().bind(provider.openServerSocketChannel(), new InetSocketAddress(serverHost, serverPort));
+        workingPool = createWorkingPool(config.getThreads());
+    }
 
     public NonBlockingServer(String serverHost, int serverPort, int threads) throws IOException {
-        super(ServerType.NON_BLOCKING, serverHost, serverPort);
-        serverSocketChannel = ServerSocketChannel.open().bind(new InetSocketAddress(serverHost, serverPort));
-        workingPool = Executors.newFixedThreadPool(threads);
+        this(serverHost, serverPort, new ServerConfig().setThreads(threads));
     }
 
     public NonBlockingServer(String serverHost, int serverPort) throws IOException {
@@ -48,16 +69,12 @@ public class NonBlockingServer extends Server {
         try {
             while (true) {
                 SocketChannel socketChannel = serverSocketChannel.accept();
+                metrics.connectionAccepted();
 
                 connections.add(socketChannel);
+                config.getSocketOptions().applyTo(socketChannel);
                 socketChannel.configureBlocking(false);
-                inputSelectorLock.lock();
-                try {
-                    inputSelector.wakeup();
-                    socketChannel.register(inputSelector, SelectionKey.OP_READ, new ChannelInputContext());
-                } finally {
-                    inputSelectorLock.unlock();
-                }
+                acceptedInputs.add(new ChannelInputContext(newConnection(), socketChannel));
             }
         } catch (IOException | ClosedSelectorException ignored) {
         } finally {
@@ -78,16 +95,22 @@ public class NonBlockingServer extends Server {
         outputSelectorExecutor.shutdown();
         inputSelector.close();
         outputSelector.close();
+        super.close();
     }
 
     private void inputSelectorReader() {
         try {
+            int idleSelects = 0;
             while (!Thread.interrupted()) {
-                inputSelectorLock.lock();
-                inputSelectorLock.unlock();
-                if (inputSelector.select() == 0) {
+                acceptedInputs.drain(this::registerInput);
+                resumedKeys.drain(this::resumeReading);
+                closedInputs.drain(this::releaseReservation);
+                metrics.selectorLoopIteration();
+                if (config.getWaitStrategy().select(inputSelector, idleSelects) == 0) {
+                    idleSelects = WaitStrategy.next(idleSelects);
                     continue;
                 }
+                idleSelects = 0;
 
                 Set<SelectionKey> selectedKeys = inputSelector.selectedKeys();
                 Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
@@ -97,9 +120,25 @@ public class NonBlockingServer extends Server {
                     SocketChannel channel = (SocketChannel) key.channel();
                     ChannelInputContext context = (ChannelInputContext) key.attachment();
 
+                    // Closed by the output side
+                    if (!key.isValid()) {
+                        keyIterator.remove();
+                        continue;
+                    }
                     if (key.isReadable()) {
-                        if (channel.read(context.buffer) == -1) {
-                            key.cancel();
+                        int read;
+                        try {
+                            read = channel.read(context.buffer);
+                        } catch (IOException e) {
+                            closeInput(key, context, true);
+                            keyIterator.remove();
+                            continue;
+                        }
+                        if (read == -1) {
+                            // Responses to the requests already read are still written
+                            closeInput(key, context, false);
+                            keyIterator.remove();
+                            continue;
                         }
                     }
 
@@ -107,29 +146,49 @@ public class NonBlockingServer extends Server {
                         context.buffer.flip();
                         switch (context.currentMessagePart) {
                             case HEAD:
-                                context.currentMessagePart = ChannelInputContext.MessagePart.BODY;
-                                context.buffer = ByteBuffer.allocate(context.buffer.getInt());
+                                context.readBeginTime = System.nanoTime();
+                                context.messageSize = context.buffer.getInt();
+                                if (!isValidFrameSize(context.messageSize)) {
+                                    closeInput(key, context, true);
+                                    break;
+                                }
+                                if (context.connection.getBudget().acquireOrWait(context.messageSize, () -> resumeRead(key))) {
+                                    context.startBody();
+                                } else {
+                                    // Stop reading until the frame fits the budget
+                                    context.currentMessagePart = MessagePart.PAUSED;
+                                    key.interestOps(0);
+                                }
                                 break;
                             case BODY:
-                                ClientContext clientContext = beginProcessClient(Protocol.Request.parseFrom(context.buffer));
-                                CompletableFuture.runAsync(() -> {
-                                    try {
+                                ClientContext clientContext;
+                                try {
+                                    clientContext = beginProcessClient(context.buffer, context.readBeginTime, context.connection);
+                                } catch (IOException e) {
+                                    // The reservation is released by beginProcessClient
+                                    context.currentMessagePart = MessagePart.HEAD;
+                                    closeInput(key, context, true);
+                                    break;
+                                }
+                                final ChannelOutputContext output = context.output;
+                                if (processInline(clientContext)) {
+                                    processClientRequest(clientContext);
+                                    if (clientContext.hasResponse() && queueResponse(output, clientContext)) {
+                                        writeInline(output);
+                                    }
+                                } else {
+                                    CompletableFuture.runAsync(() -> {
                                         processClientRequest(clientContext);
-                                        ChannelOutputContext channelOutputContext = new ChannelOutputContext();
-                                        channelOutputContext.processedClientContext.set(clientContext);
-                                        outputSelectorLock.lock();
-                                        try {
-                                            outputSelector.wakeup();
-                                            channel.register(outputSelector, SelectionKey.OP_WRITE, channelOutputContext);
-                                        } finally {
-                                            outputSelectorLock.unlock();
+                                        if (clientContext.hasResponse()) {
+                                            addResponse(output, clientContext);
                                         }
-                                    } catch (ClosedChannelException ignored) {
-                                    }
-                                }, workingPool);
-                                context.currentMessagePart = ChannelInputContext.MessagePart.HEAD;
+                                    }, workerFor(clientContext));
+                                }
+                                context.currentMessagePart = MessagePart.HEAD;
                                 context.buffer = ByteBuffer.allocate(4);
                                 break;
+                            case PAUSED:
+                                break;
                         }
                     }
 
@@ -140,65 +199,290 @@ public class NonBlockingServer extends Server {
         }
     }
 
+    private void registerInput(ChannelInputContext context) {
+        try {
+            context.output.channel.register(inputSelector, SelectionKey.OP_READ, context);
+        } catch (ClosedChannelException e) {
+            countClosed(context);
+        }
+    }
+
+    /**
+     * Must be called by the input selector thread
+     *
+     * @param closeChannel false if the client has only finished sending, so pending responses are still written
+     */
+    private void closeInput(SelectionKey key, ChannelInputContext context, boolean closeChannel) {
+        key.cancel();
+        releaseReservation(context);
+        if (closeChannel) {
+            closeChannel(context.output);
+        }
+        countClosed(context);
+    }
+
+    /**
+     * Closes a connection on a failed write, may be called by any thread
+     */
+    private void closeOutput(ChannelOutputContext output) {
+        closeChannel(output);
+        // The thread which has scheduled the connection owns the current response
+        discardResponses(output);
+        countClosed(output.input);
+        closedInputs.add(output.input);
+    }
+
+    /**
+     * Responses queued after this are discarded by the threads which queue them
+     */
+    private void closeChannel(ChannelOutputContext output) {
+        output.closed = true;
+        discardQueued(output);
+        try {
+            output.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void countClosed(ChannelInputContext context) {
+        if (context.closed.compareAndSet(false, true)) {
+            metrics.connectionClosed();
+        }
+    }
+
+    /**
+     * Returns the reservation of a frame which is being read, must be called by the input selector thread.
+     * Paused frames are released by {@link #resumeReading(SelectionKey)} when they fit the budget.
+     */
+    private void releaseReservation(ChannelInputContext context) {
+        if (context.currentMessagePart == MessagePart.BODY) {
+            context.connection.getBudget().release(context.messageSize);
+            context.currentMessagePart = MessagePart.HEAD;
+        }
+    }
+
+    private void resumeRead(SelectionKey key) {
+        resumedKeys.add(key);
+    }
+
+    private void resumeReading(SelectionKey key) {
+        ChannelInputContext context = (ChannelInputContext) key.attachment();
+        if (!key.isValid()) {
+            context.connection.getBudget().release(context.messageSize);
+            return;
+        }
+        context.startBody();
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Queues a processed request of the connection, responses are written in the order they are queued.
+     */
+    private void addResponse(ChannelOutputContext output, ClientContext clientContext) {
+        if (queueResponse(output, clientContext)) {
+            writableOutputs.add(output);
+        }
+    }
+
+    /**
+     * @return true if the caller has scheduled the connection and must write the response or hand it to the output selector
+     */
+    private boolean queueResponse(ChannelOutputContext output, ClientContext clientContext) {
+        output.responses.add(clientContext);
+        if (output.closed) {
+            // The connection was closed after the response was processed
+            discardQueued(output);
+            return false;
+        }
+        // Only the first response of an idle connection has to be handed to the output selector
+        return output.scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Writes queued responses by the input selector thread, which has just scheduled the connection,
+     * until the socket buffer is full. The rest is handed to the output selector.
+     */
+    private void writeInline(ChannelOutputContext output) {
+        try {
+            while (output.responseBytes != null || output.nextResponse()) {
+                if (output.responseBytes.position() == 0) {
+                    beginWriteResponse(output.current, output.responseBytes);
+                }
+                output.channel.write(output.responseBytes);
+                if (output.responseBytes.hasRemaining()) {
+                    writableOutputs.add(output);
+                    return;
+                }
+                finishProcessClient(output.current, output.responseBytes);
+                output.responseBytes = serializeNextResponse(output.current);
+                if (output.responseBytes == null) {
+                    output.current = null;
+                }
+            }
+        } catch (IOException e) {
+            closeOutput(output);
+            return;
+        }
+        output.scheduled.set(false);
+        // A response added by a worker after the queue was found empty
+        if (!output.responses.isEmpty() && output.scheduled.compareAndSet(false, true)) {
+            writableOutputs.add(output);
+        }
+    }
+
+    private void registerWritableOutput(ChannelOutputContext output) {
+        try {
+            if (output.key == null) {
+                output.key = output.channel.register(outputSelector, SelectionKey.OP_WRITE, output);
+            } else {
+                output.key.interestOps(SelectionKey.OP_WRITE);
+            }
+        } catch (ClosedChannelException | CancelledKeyException e) {
+            closeOutput(output);
+        }
+    }
+
+    private void discardResponses(ChannelOutputContext output) {
+        if (output.current != null) {
+            if (output.responseBytes != null) {
+                abortResponse(output.current, output.responseBytes);
+            } else {
+                discardResponse(output.current);
+            }
+            output.current = null;
+            output.responseBytes = null;
+        }
+        discardQueued(output);
+    }
+
+    private void discardQueued(ChannelOutputContext output) {
+        ClientContext clientContext;
+        while ((clientContext = output.responses.poll()) != null) {
+            discardResponse(clientContext);
+        }
+    }
+
     private void outputSelectorWriter() {
         try {
+            int idleSelects = 0;
             while (!Thread.interrupted()) {
-                outputSelectorLock.lock();
-                outputSelectorLock.unlock();
-                if (outputSelector.select() == 0) {
+                writableOutputs.drain(this::registerWritableOutput);
+                metrics.selectorLoopIteration();
+                if (config.getWaitStrategy().select(outputSelector, idleSelects) == 0) {
+                    idleSelects = WaitStrategy.next(idleSelects);
                     continue;
                 }
+                idleSelects = 0;
 
                 Set<SelectionKey> selectedKeys = outputSelector.selectedKeys();
                 Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
 
                 while (keyIterator.hasNext()) {
                     SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
                     SocketChannel channel = (SocketChannel) key.channel();
                     ChannelOutputContext context = (ChannelOutputContext) key.attachment();
 
-                    if (context.responseBytes == null) {
-                        byte[] response = endProcessClient(context.processedClientContext.get()).toByteArray();
-                        ByteBuffer responseBytes = ByteBuffer.allocate(4 + response.length);
-                        responseBytes.putInt(response.length);
-                        responseBytes.put(response);
-                        responseBytes.flip();
-                        context.responseBytes = responseBytes;
+                    if (!key.isValid() || !key.isWritable()) {
+                        continue;
+                    }
+                    if (context.responseBytes == null && !context.nextResponse()) {
+                        // Nothing to write, the next response schedules the connection again
+                        key.interestOps(0);
+                        context.scheduled.set(false);
+                        if (!context.responses.isEmpty() && context.scheduled.compareAndSet(false, true)) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                        }
+                        continue;
                     }
 
-                    if (key.isWritable()) {
+                    if (context.responseBytes.position() == 0) {
+                        beginWriteResponse(context.current, context.responseBytes);
+                    }
+                    try {
                         channel.write(context.responseBytes);
+                    } catch (IOException e) {
+                        closeOutput(context);
+                        continue;
                     }
 
                     if (!context.responseBytes.hasRemaining()) {
-                        context.responseBytes = null;
-                        key.cancel();
+                        finishProcessClient(context.current, context.responseBytes);
+                        context.responseBytes = serializeNextResponse(context.current);
+                        if (context.responseBytes == null) {
+                            context.current = null;
+                        }
                     }
-
-                    keyIterator.remove();
                 }
             }
         } catch (IOException | ClosedSelectorException ignored) {
         }
     }
 
-    private static class ChannelInputContext {
+    private enum MessagePart {
+        HEAD,
+        // Message size is known but does not fit the memory budget
+        PAUSED,
+        BODY
+    }
+
+    private class ChannelInputContext {
+        final Connection connection;
+        final ChannelOutputContext output;
+        // Set when the close of the connection is counted
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        // Used by the input selector thread only
         MessagePart currentMessagePart;
         ByteBuffer buffer;
+        long readBeginTime;
+        int messageSize;
 
-        ChannelInputContext() {
+        ChannelInputContext(Connection connection, SocketChannel channel) {
+            this.connection = connection;
+            this.output = new ChannelOutputContext(channel, this);
             currentMessagePart = MessagePart.HEAD;
             buffer = ByteBuffer.allocate(4);
         }
 
-        enum MessagePart {
-            HEAD,
-            BODY
+        void startBody() {
+            currentMessagePart = MessagePart.BODY;
+            buffer = ByteBuffer.allocate(messageSize);
         }
     }
 
-    private static class ChannelOutputContext {
-        final AtomicReference<ClientContext> processedClientContext = new AtomicReference<>();
-        ByteBuffer responseBytes = null;
+    /**
+     * Responses of a connection, several requests of a connection may be processed at once and finish in any order.
+     */
+    private class ChannelOutputContext {
+        final SocketChannel channel;
+        final ChannelInputContext input;
+        final Queue<ClientContext> responses = new ConcurrentLinkedQueue<>();
+        // Set while the connection is handed to the output selector or has OP_WRITE interest
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // Set when the channel is closed by the server
+        volatile boolean closed;
+        // Used by the output selector thread only
+        SelectionKey key;
+        // Used by the thread which set scheduled, the output selector or the input selector writing inline
+        ClientContext current;
+        ByteBuffer responseBytes;
+
+        ChannelOutputContext(SocketChannel channel, ChannelInputContext input) {
+            this.channel = channel;
+            this.input = input;
+        }
+
+        /**
+         * @return false if there are no queued responses
+         */
+        boolean nextResponse() {
+            while ((current = responses.poll()) != null) {
+                responseBytes = serializeResponse(current);
+                if (responseBytes != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
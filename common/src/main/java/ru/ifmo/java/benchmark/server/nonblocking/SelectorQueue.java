@@ -0,0 +1,49 @@
+package ru.ifmo.java.benchmark.server.nonblocking;
+
+import ru.ifmo.java.benchmark.server.metrics.ServerMetrics;
+
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Tasks handed to a selector thread by other threads. The selector is woken up only when the queue becomes
+ * non-empty after it was drained, so a burst of tasks costs a single wakeup.
+ */
+public class SelectorQueue<T> {
+    private final Selector selector;
+    private final ServerMetrics metrics;
+    private final Queue<T> tasks = new ConcurrentLinkedQueue<>();
+    // Set from the wakeup until the selector thread drains the queue
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+    public SelectorQueue(Selector selector, ServerMetrics metrics) {
+        this.selector = selector;
+        this.metrics = metrics;
+    }
+
+    /**
+     * May be called by any thread
+     */
+    public void add(T task) {
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true)) {
+            metrics.selectorWakeup();
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Must be called by the selector thread before it selects
+     */
+    public void drain(Consumer<T> handler) {
+        // Tasks added from now on wake the selector up again
+        wakeupPending.set(false);
+        T task;
+        while ((task = tasks.poll()) != null) {
+            handler.accept(task);
+        }
+    }
+}
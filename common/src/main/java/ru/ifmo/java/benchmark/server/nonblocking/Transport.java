@@ -0,0 +1,84 @@
+package ru.ifmo.java.benchmark.server.nonblocking;
+
+import java.nio.channels.spi.SelectorProvider;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Source of the selectors and channels of the non-blocking and Netty servers.
+ * <p>
+ * {@code nio} is the default provider of the JDK (epoll on Linux, kqueue on macOS), {@code poll} is the poll(2) based
+ * provider of the JDK, which needs {@code --add-exports java.base/sun.nio.ch=ALL-UNNAMED} since Java 9.
+ * Any other {@link SelectorProvider} registered as a service on the class path, e.g. one backed by a native library,
+ * is available by the simple name of its class.
+ */
+public final class Transport {
+    private static final Logger logger = Logger.getLogger(Transport.class.getName());
+
+    public static final Transport NIO = new Transport("nio", SelectorProvider.provider());
+
+    private final String name;
+    private final SelectorProvider provider;
+
+    public Transport(String name, SelectorProvider provider) {
+        this.name = name;
+        this.provider = provider;
+    }
+
+    /**
+     * Transports which can be created in this runtime, the default one first
+     */
+    public static Map<String, Transport> available() {
+        Map<String, Transport> transports = new LinkedHashMap<>();
+        transports.put(NIO.name, NIO);
+        SelectorProvider poll = loadProvider("sun.nio.ch.PollSelectorProvider");
+        if (poll != null && poll.getClass() != NIO.provider.getClass()) {
+            transports.put("poll", new Transport("poll", poll));
+        }
+        try {
+            for (SelectorProvider provider : ServiceLoader.load(SelectorProvider.class)) {
+                String name = provider.getClass().getSimpleName();
+                transports.putIfAbsent(name, new Transport(name, provider));
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.log(Level.WARNING, "Selector provider can not be loaded", e);
+        }
+        return transports;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the transport is not available
+     */
+    public static Transport forName(String name) {
+        Transport transport = available().get(name);
+        if (transport == null) {
+            throw new IllegalArgumentException("Transport " + name + " is not available, available: " + available().keySet());
+        }
+        return transport;
+    }
+
+    private static SelectorProvider loadProvider(String className) {
+        try {
+            return (SelectorProvider) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SelectorProvider getProvider() {
+        return provider;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,517 @@
+package ru.ifmo.java.benchmark.server.reactive;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import ru.ifmo.java.benchmark.server.Connection;
+import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
+import ru.ifmo.java.benchmark.server.nonblocking.SelectorQueue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server in which every connection is a pipeline of reactive streams stages:
+ * the socket publishes decoded requests, the processor sorts them in the working pool
+ * and the response writer requests a new request whenever a response is written.
+ * <p>
+ * The socket is read only while there is demand, so a connection has at most {@link ServerConfig#getRequestWindow()}
+ * requests between its socket and its responses. Clients sending faster are stopped by TCP flow control
+ * instead of filling the queue of the working pool.
+ * <p>
+ * A single selector thread reads and writes all connections.
+ */
+public class ReactiveServer extends Server {
+    final private ServerSocketChannel serverSocketChannel;
+    final private Selector selector;
+    final private ExecutorService selectorExecutor;
+    final private ExecutorService workingPool;
+    // Connections whose interest has to be recomputed by the selector thread
+    final private SelectorQueue<ChannelState> pendingUpdates;
+    // Connections which have no demand and are not read
+    final private AtomicInteger backpressuredConnections = new AtomicInteger();
+
+    public ReactiveServer(String serverHost, int serverPort, ServerConfig config) throws IOException {
+        super(ServerType.REACTIVE, serverHost, serverPort, config);
+        SelectorProvider provider = config.getTransport().getProvider();
+        selector = provider.openSelector();
+        pendingUpdates = new SelectorQueue<>(selector, metrics);
+        selectorExecutor = Executors.newSingleThreadExecutor(config.getThreadPlacement().ioThreads());
+        serverSocketChannel = config.getSocketOptions().bind(provider.openServerSocketChannel(), new InetSocketAddress(serverHost, serverPort));
+        workingPool = createWorkingPool(config.getThreads());
+        metrics.setBackpressuredConnections(backpressuredConnections::get);
+    }
+
+    public ReactiveServer(String serverHost, int serverPort, int threads) throws IOException {
+        this(serverHost, serverPort, new ServerConfig().setThreads(threads));
+    }
+
+    public ReactiveServer(String serverHost, int serverPort) throws IOException {
+        this(serverHost, serverPort, 4);
+    }
+
+    @Override
+    public void run() {
+        selectorExecutor.submit(this::selectorLoop);
+        try {
+            while (true) {
+                SocketChannel socketChannel = serverSocketChannel.accept();
+                metrics.connectionAccepted();
+                config.getSocketOptions().applyTo(socketChannel);
+                socketChannel.configureBlocking(false);
+
+                ChannelState state = new ChannelState(socketChannel);
+                RequestProcessor processor = new RequestProcessor();
+                state.publisher.subscribe(processor);
+                processor.subscribe(state.writer);
+                state.scheduleUpdate();
+            }
+        } catch (IOException | ClosedSelectorException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocketChannel.close();
+        selectorExecutor.shutdownNow();
+        workingPool.shutdown();
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+        selector.close();
+        super.close();
+    }
+
+    private void selectorLoop() {
+        try {
+            int idleSelects = 0;
+            while (!Thread.interrupted()) {
+                pendingUpdates.drain(ChannelState::update);
+                metrics.selectorLoopIteration();
+                if (config.getWaitStrategy().select(selector, idleSelects) == 0) {
+                    idleSelects = WaitStrategy.next(idleSelects);
+                    continue;
+                }
+                idleSelects = 0;
+
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    ChannelState state = (ChannelState) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        state.publisher.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        state.writer.write();
+                    }
+                    state.update();
+                }
+            }
+        } catch (IOException | ClosedSelectorException ignored) {
+        }
+    }
+
+    /**
+     * Selection key of a connection, its interest follows the demand of the publisher and the responses of the writer.
+     */
+    private class ChannelState {
+        final SocketChannel channel;
+        final RequestPublisher publisher;
+        final ResponseWriter writer;
+        final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+        // Used by the selector thread only
+        SelectionKey key;
+        boolean backpressured;
+
+        ChannelState(SocketChannel channel) {
+            this.channel = channel;
+            publisher = new RequestPublisher(this, newConnection());
+            writer = new ResponseWriter(this);
+        }
+
+        /**
+         * May be called by any thread
+         */
+        void scheduleUpdate() {
+            if (updateScheduled.compareAndSet(false, true)) {
+                pendingUpdates.add(this);
+            }
+        }
+
+        /**
+         * Must be called by the selector thread
+         */
+        void update() {
+            updateScheduled.set(false);
+            publisher.resumeIfAcquired();
+            if (!channel.isOpen()) {
+                setBackpressured(false);
+                publisher.close();
+                writer.discard();
+                return;
+            }
+            if (key == null) {
+                try {
+                    key = channel.register(selector, 0, this);
+                } catch (ClosedChannelException e) {
+                    writer.discard();
+                    return;
+                }
+            }
+            boolean reading = publisher.wantsRead();
+            setBackpressured(!reading && !publisher.paused);
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (writer.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void setBackpressured(boolean backpressured) {
+            if (this.backpressured != backpressured) {
+                this.backpressured = backpressured;
+                backpressuredConnections.addAndGet(backpressured ? 1 : -1);
+            }
+        }
+
+        void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            metrics.connectionClosed();
+        }
+    }
+
+    /**
+     * Reads frames of a connection as long as its subscriber has demand.
+     * Reads are done by the selector thread, demand may be requested by any thread.
+     */
+    private class RequestPublisher implements Publisher<ClientContext>, Subscription {
+        final ChannelState state;
+        final Connection connection;
+        final AtomicLong demand = new AtomicLong();
+        Subscriber<? super ClientContext> subscriber;
+        // Used by the selector thread only
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        boolean head = true;
+        long readBeginTime;
+        int messageSize;
+        // Set while the frame does not fit the memory budget
+        boolean paused;
+        boolean closed;
+        volatile boolean acquired;
+
+        RequestPublisher(ChannelState state, Connection connection) {
+            this.state = state;
+            this.connection = connection;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ClientContext> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (demand.getAndAdd(n) == 0) {
+                state.scheduleUpdate();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            demand.set(0);
+            state.scheduleUpdate();
+        }
+
+        boolean wantsRead() {
+            return !paused && demand.get() > 0;
+        }
+
+        void read() {
+            try {
+                if (state.channel.read(buffer) == -1) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            buffer.flip();
+            if (head) {
+                readBeginTime = System.nanoTime();
+                messageSize = buffer.getInt();
+                if (!isValidFrameSize(messageSize)) {
+                    close();
+                    return;
+                }
+                if (connection.getBudget().acquireOrWait(messageSize, this::onAcquired)) {
+                    startBody();
+                } else {
+                    // Stop reading until the frame fits the budget
+                    paused = true;
+                }
+                return;
+            }
+
+            ClientContext clientContext;
+            try {
+                clientContext = beginProcessClient(buffer, readBeginTime, connection);
+            } catch (IOException e) {
+                head = true;
+                close();
+                return;
+            }
+            head = true;
+            buffer = ByteBuffer.allocate(4);
+            demand.decrementAndGet();
+            subscriber.onNext(clientContext);
+        }
+
+        private void onAcquired() {
+            acquired = true;
+            state.scheduleUpdate();
+        }
+
+        /**
+         * Must be called by the selector thread
+         */
+        void resumeIfAcquired() {
+            if (!acquired) {
+                return;
+            }
+            acquired = false;
+            paused = false;
+            if (state.channel.isOpen()) {
+                startBody();
+            } else {
+                connection.getBudget().release(messageSize);
+            }
+        }
+
+        private void startBody() {
+            head = false;
+            buffer = ByteBuffer.allocate(messageSize);
+        }
+
+        /**
+         * Closes the connection, returns the reservation of a frame being read and completes the subscriber.
+         * Must be called by the selector thread
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!head) {
+                connection.getBudget().release(messageSize);
+                head = true;
+            }
+            state.close();
+            subscriber.onComplete();
+        }
+    }
+
+    /**
+     * Processes requests in the working pool, demand of the writer is passed to the publisher as is.
+     * Requests without a response, e.g. chunks of a streamed array, are replenished by the processor.
+     * Processed requests are emitted in the order they are done.
+     */
+    private class RequestProcessor implements Processor<ClientContext, ClientContext> {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        volatile boolean upstreamCompleted;
+        Subscription upstream;
+        Subscriber<? super ClientContext> downstream;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ClientContext> subscriber) {
+            downstream = subscriber;
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    upstream.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    upstream.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(ClientContext clientContext) {
+            inFlight.incrementAndGet();
+            CompletableFuture.runAsync(() -> {
+                processClientRequest(clientContext);
+                if (clientContext.hasResponse()) {
+                    synchronized (this) {
+                        downstream.onNext(clientContext);
+                    }
+                } else {
+                    upstream.request(1);
+                }
+                if (inFlight.decrementAndGet() == 0 && upstreamCompleted) {
+                    complete();
+                }
+            }, workerFor(clientContext));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            onComplete();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamCompleted = true;
+            if (inFlight.get() == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                synchronized (this) {
+                    downstream.onComplete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes responses of a connection one by one and requests a new request when a response is written.
+     * Writes are done by the selector thread, responses may be added by any thread.
+     */
+    private class ResponseWriter implements Subscriber<ClientContext> {
+        final ChannelState state;
+        final Queue<ClientContext> responses = new ConcurrentLinkedQueue<>();
+        Subscription subscription;
+        // Used by the selector thread only
+        ClientContext current;
+        ByteBuffer responseBytes;
+
+        ResponseWriter(ChannelState state) {
+            this.state = state;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(config.getRequestWindow());
+        }
+
+        @Override
+        public void onNext(ClientContext clientContext) {
+            responses.add(clientContext);
+            state.scheduleUpdate();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            state.scheduleUpdate();
+        }
+
+        @Override
+        public void onComplete() {
+            state.scheduleUpdate();
+        }
+
+        boolean wantsWrite() {
+            return responseBytes != null || !responses.isEmpty();
+        }
+
+        void write() {
+            if (responseBytes == null && !nextResponse()) {
+                return;
+            }
+            if (responseBytes.position() == 0) {
+                beginWriteResponse(current, responseBytes);
+            }
+            try {
+                state.channel.write(responseBytes);
+            } catch (IOException e) {
+                state.publisher.close();
+                discard();
+                return;
+            }
+            if (responseBytes.hasRemaining()) {
+                return;
+            }
+            finishProcessClient(current, responseBytes);
+            responseBytes = serializeNextResponse(current);
+            if (responseBytes == null) {
+                current = null;
+                subscription.request(1);
+            }
+        }
+
+        private boolean nextResponse() {
+            while ((current = responses.poll()) != null) {
+                responseBytes = serializeResponse(current);
+                if (responseBytes != null) {
+                    return true;
+                }
+                subscription.request(1);
+            }
+            return false;
+        }
+
+        /**
+         * Must be called by the selector thread when the channel is closed
+         */
+        void discard() {
+            if (current != null) {
+                if (responseBytes != null) {
+                    abortResponse(current, responseBytes);
+                } else {
+                    discardResponse(current);
+                }
+                current = null;
+                responseBytes = null;
+            }
+            ClientContext clientContext;
+            while ((clientContext = responses.poll()) != null) {
+                discardResponse(clientContext);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.ifmo.java.benchmark.server.schedule;
+
+/**
+ * Scheduling state of a connection: its token bucket and the finish tag of its last request for fair queueing.
+ */
+public class ConnectionSchedule {
+    // Tokens are array items, a request may take the bucket below zero and the following ones wait until it is refilled
+    private final double itemsPerNano;
+    private final double burst;
+    private double tokens;
+    private long updateTime;
+
+    // Guarded by the scheduler
+    double lastFinishTag = 0;
+
+    /**
+     * @param itemsPerSecond rate limit of the connection, zero disables the limit
+     * @param burstItems     items which may be sent at once after the connection was idle
+     */
+    public ConnectionSchedule(double itemsPerSecond, long burstItems) {
+        this.itemsPerNano = itemsPerSecond / 1e9;
+        this.burst = Math.max(1, burstItems);
+        this.tokens = burst;
+        this.updateTime = System.nanoTime();
+    }
+
+    /**
+     * Takes tokens of a request.
+     *
+     * @return nanoseconds the request has to wait for the tokens
+     */
+    synchronized long reserve(int items) {
+        if (itemsPerNano <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - updateTime) * itemsPerNano);
+        updateTime = now;
+        tokens -= items;
+        return tokens >= 0 ? 0 : (long) (-tokens / itemsPerNano);
+    }
+}
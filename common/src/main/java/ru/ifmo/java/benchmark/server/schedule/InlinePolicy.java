@@ -0,0 +1,51 @@
+package ru.ifmo.java.benchmark.server.schedule;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a request is cheap enough to be processed by the I/O thread which read it,
+ * so that tiny requests do not pay for two thread handoffs.
+ * <p>
+ * Estimated costs are converted to time with the observed time per unit of cost, an exponentially weighted
+ * average over processed requests, so the threshold follows the machine and the sort algorithm.
+ */
+public class InlinePolicy {
+    // Weight of a new observation in the average
+    private static final double ALPHA = 0.05;
+
+    private final long thresholdNanos;
+    // Bits of the average nanoseconds per unit of cost
+    private final AtomicLong nanosPerCost = new AtomicLong(Double.doubleToLongBits(1.0));
+
+    /**
+     * @param thresholdNanos requests expected to take less are processed inline
+     */
+    public InlinePolicy(long thresholdNanos) {
+        this.thresholdNanos = thresholdNanos;
+    }
+
+    public boolean shouldInline(long cost) {
+        return cost * getNanosPerCost() < thresholdNanos;
+    }
+
+    /**
+     * @param cost  estimated cost of a processed request, requests of zero cost are ignored
+     * @param nanos time the request was processed
+     */
+    public void record(long cost, long nanos) {
+        if (cost <= 0) {
+            return;
+        }
+        double observed = (double) nanos / cost;
+        long current;
+        long updated;
+        do {
+            current = nanosPerCost.get();
+            updated = Double.doubleToLongBits((1 - ALPHA) * Double.longBitsToDouble(current) + ALPHA * observed);
+        } while (!nanosPerCost.compareAndSet(current, updated));
+    }
+
+    public double getNanosPerCost() {
+        return Double.longBitsToDouble(nanosPerCost.get());
+    }
+}
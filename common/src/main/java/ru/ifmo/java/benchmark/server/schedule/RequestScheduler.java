@@ -0,0 +1,185 @@
+package ru.ifmo.java.benchmark.server.schedule;
+
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Worker pool which takes queued requests by priority class first and by {@link SchedulingPolicy} within a class.
+ * Requests of a connection exceeding its rate limit are queued only when the {@link ConnectionSchedule} has enough tokens.
+ * <p>
+ * Tasks submitted without {@link #executor(ConnectionSchedule, int, long, int)} are of the lowest class and zero cost.
+ */
+public class RequestScheduler extends ThreadPoolExecutor {
+    private final SchedulingPolicy policy;
+    // Releases rate limited requests, its thread is started by the first of them
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger delayed = new AtomicInteger();
+    private final LongAdder rateLimited = new LongAdder();
+
+    // Finish tag of the last started request, guarded by this
+    private double virtualTime = 0;
+
+    public RequestScheduler(int threads, SchedulingPolicy policy) {
+        this(threads, policy, Executors.defaultThreadFactory());
+    }
+
+    public RequestScheduler(int threads, SchedulingPolicy policy, ThreadFactory threadFactory) {
+        this(threads, policy, threadFactory, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * @param waitStrategy how idle workers wait for queued requests
+     */
+    public RequestScheduler(int threads, SchedulingPolicy policy, ThreadFactory threadFactory, WaitStrategy waitStrategy) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new WaitingQueue(waitStrategy), threadFactory);
+        this.policy = policy;
+        // Otherwise the first tasks bypass the queue
+        prestartAllCoreThreads();
+    }
+
+    /**
+     * @param items    number of array items of the request, taken from the token bucket of the schedule
+     * @param cost     estimated work of the request
+     * @param priority class of the request, higher classes are taken first
+     * @return executor of the tasks of a request
+     */
+    public Executor executor(ConnectionSchedule schedule, int items, long cost, int priority) {
+        return command -> {
+            long delay = schedule.reserve(items);
+            if (delay == 0) {
+                enqueue(command, schedule, cost, priority);
+                return;
+            }
+            rateLimited.increment();
+            delayed.incrementAndGet();
+            timer.schedule(() -> {
+                delayed.decrementAndGet();
+                enqueue(command, schedule, cost, priority);
+            }, delay, TimeUnit.NANOSECONDS);
+        };
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof Task ? command : new Task(command, Integer.MIN_VALUE, 0, sequence.getAndIncrement()));
+    }
+
+    private void enqueue(Runnable command, ConnectionSchedule schedule, long cost, int priority) {
+        double key;
+        switch (policy) {
+            case SHORTEST_JOB_FIRST:
+                key = cost;
+                break;
+            case FAIR:
+                synchronized (this) {
+                    key = Math.max(virtualTime, schedule.lastFinishTag) + cost;
+                    schedule.lastFinishTag = key;
+                }
+                break;
+            default:
+                key = 0;
+        }
+        execute(new Task(command, priority, key, sequence.getAndIncrement()));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (policy == SchedulingPolicy.FAIR) {
+            synchronized (this) {
+                virtualTime = Math.max(virtualTime, ((Task) r).key);
+            }
+        }
+        super.beforeExecute(t, r);
+    }
+
+    /**
+     * @return number of requests waiting for a worker or for tokens
+     */
+    public int getQueueLength() {
+        return getQueue().size() + delayed.get();
+    }
+
+    /**
+     * @return number of requests delayed by rate limits
+     */
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        timer.shutdownNow();
+        super.shutdown();
+    }
+
+    /**
+     * Workers take requests with {@link #take()}, which polls the queue by the wait strategy before it parks
+     */
+    private static class WaitingQueue extends PriorityBlockingQueue<Runnable> {
+        private final WaitStrategy waitStrategy;
+
+        WaitingQueue(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            for (int attempt = 0; waitStrategy.idle(attempt); attempt = WaitStrategy.next(attempt)) {
+                Runnable task = poll();
+                if (task != null) {
+                    return task;
+                }
+                // Workers are interrupted on shutdown
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return super.take();
+        }
+    }
+
+    private static class Task implements Runnable, Comparable<Task> {
+        final Runnable command;
+        final int priority;
+        final double key;
+        final long sequence;
+
+        Task(Runnable command, int priority, double key, long sequence) {
+            this.command = command;
+            this.priority = priority;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            if (key != other.key) {
+                return Double.compare(key, other.key);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.ifmo.java.benchmark.server.schedule;
+
+/**
+ * Order in which queued requests of the same priority class are taken by workers.
+ */
+public enum SchedulingPolicy {
+    /**
+     * In the order of arrival
+     */
+    FIFO,
+    /**
+     * Cheapest estimated request first, expensive requests may starve while cheaper ones keep arriving
+     */
+    SHORTEST_JOB_FIRST,
+    /**
+     * Weighted fair queueing across connections: every connection gets an equal share of the estimated work,
+     * so a connection sending large arrays delays requests of other connections by no more than a single request
+     */
+    FAIR
+}
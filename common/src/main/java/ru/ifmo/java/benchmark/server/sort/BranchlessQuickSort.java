@@ -0,0 +1,109 @@
+package ru.ifmo.java.benchmark.server.sort;
+
+import java.util.Arrays;
+
+/**
+ * Quicksort without data-dependent branches in the inner loops, scalar form of SIMD sorts:
+ * blocks of up to {@link #NETWORK_SIZE} elements are sorted by a fixed sorting network of min/max operations
+ * and partitioning writes every element unconditionally and advances the output index by the comparison result.
+ */
+final class BranchlessQuickSort {
+    static final int NETWORK_SIZE = 16;
+
+    // Batcher's odd-even merge sort network for NETWORK_SIZE elements
+    private static final int[] NETWORK_LOW;
+    private static final int[] NETWORK_HIGH;
+
+    static {
+        int[] low = new int[NETWORK_SIZE * NETWORK_SIZE];
+        int[] high = new int[NETWORK_SIZE * NETWORK_SIZE];
+        int size = 0;
+        for (int p = 1; p < NETWORK_SIZE; p <<= 1) {
+            for (int k = p; k >= 1; k >>= 1) {
+                for (int j = k % p; j <= NETWORK_SIZE - 1 - k; j += 2 * k) {
+                    for (int i = 0; i <= Math.min(k - 1, NETWORK_SIZE - j - k - 1); i++) {
+                        if ((i + j) / (2 * p) == (i + j + k) / (2 * p)) {
+                            low[size] = i + j;
+                            high[size] = i + j + k;
+                            size++;
+                        }
+                    }
+                }
+            }
+        }
+        NETWORK_LOW = Arrays.copyOf(low, size);
+        NETWORK_HIGH = Arrays.copyOf(high, size);
+    }
+
+    private BranchlessQuickSort() {
+    }
+
+    static void sort(int[] a) {
+        sort(a, 0, a.length, 2 * (32 - Integer.numberOfLeadingZeros(a.length)));
+    }
+
+    private static void sort(int[] a, int from, int to, int depth) {
+        while (to - from > NETWORK_SIZE) {
+            if (depth-- == 0) {
+                // Too many bad pivots
+                Arrays.sort(a, from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            compareExchange(a, from, middle);
+            compareExchange(a, middle, to - 1);
+            compareExchange(a, from, middle);
+            int pivot = a[middle];
+
+            // Elements less than the pivot, then equal to it, then greater
+            int less = partition(a, from, to, pivot, 0);
+            int notGreater = partition(a, less, to, pivot, 1);
+
+            if (less - from < to - notGreater) {
+                sort(a, from, less, depth);
+                from = notGreater;
+            } else {
+                sort(a, notGreater, to, depth);
+                to = less;
+            }
+        }
+        network(a, from, to);
+    }
+
+    /**
+     * Moves elements {@code < pivot + bias} to the beginning of the range
+     *
+     * @return end of the moved elements
+     */
+    private static int partition(int[] a, int from, int to, int pivot, int bias) {
+        long bound = (long) pivot + bias;
+        int store = from;
+        for (int i = from; i < to; i++) {
+            int value = a[i];
+            a[i] = a[store];
+            a[store] = value;
+            store += (int) ((value - bound) >>> 63);
+        }
+        return store;
+    }
+
+    /**
+     * Sorts at most {@link #NETWORK_SIZE} elements, missing elements act as +infinity so their comparators are skipped
+     */
+    private static void network(int[] a, int from, int to) {
+        int size = to - from;
+        for (int c = 0; c < NETWORK_LOW.length; c++) {
+            if (NETWORK_HIGH[c] < size) {
+                compareExchange(a, from + NETWORK_LOW[c], from + NETWORK_HIGH[c]);
+            }
+        }
+    }
+
+    private static void compareExchange(int[] a, int i, int j) {
+        int x = a[i];
+        int y = a[j];
+        a[i] = Math.min(x, y);
+        a[j] = Math.max(x, y);
+    }
+}
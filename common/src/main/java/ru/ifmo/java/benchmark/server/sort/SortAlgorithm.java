@@ -0,0 +1,329 @@
+package ru.ifmo.java.benchmark.server.sort;
+
+import java.util.Arrays;
+
+/**
+ * Algorithms available for {@code SortArrayRequest}.
+ * {@link #GNOME} is the reference workload of the benchmark, {@link #ADAPTIVE} picks one of the others by {@link SortProfile}.
+ */
+public enum SortAlgorithm {
+    GNOME {
+        @Override
+        public void sort(int[] a) {
+            int i = 1;
+            int tmp;
+            while (i < a.length) {
+                if (i == 0 || a[i - 1] <= a[i]) {
+                    i++;
+                } else {
+                    tmp = a[i];
+                    a[i] = a[i - 1];
+                    a[i - 1] = tmp;
+                    i--;
+                }
+            }
+        }
+
+        @Override
+        public void sort(int[] a, long deadline) {
+            int i = 1;
+            int tmp;
+            int steps = 0;
+            while (i < a.length) {
+                if (++steps == DEADLINE_CHECK_INTERVAL) {
+                    steps = 0;
+                    checkDeadline(deadline);
+                }
+                if (i == 0 || a[i - 1] <= a[i]) {
+                    i++;
+                } else {
+                    tmp = a[i];
+                    a[i] = a[i - 1];
+                    a[i - 1] = tmp;
+                    i--;
+                }
+            }
+        }
+
+        @Override
+        public long estimateCost(int items) {
+            return quadraticCost(items);
+        }
+    },
+    INSERTION {
+        @Override
+        public void sort(int[] a) {
+            insertionSort(a, 0, a.length);
+        }
+
+        @Override
+        public void sort(int[] a, long deadline) {
+            // Every block extends the sorted prefix by a few items, each of them may shift the whole prefix
+            int block = Math.max(1, (DEADLINE_CHECK_INTERVAL << 6) / Math.max(1, a.length));
+            for (int sorted = 0; sorted < a.length; sorted += block) {
+                checkDeadline(deadline);
+                insertionSort(a, 0, Math.min(a.length, sorted + block), sorted);
+            }
+        }
+
+        @Override
+        public long estimateCost(int items) {
+            return quadraticCost(items);
+        }
+    },
+    /**
+     * Merges natural ascending and descending runs like TimSort does, linear on presorted input
+     */
+    RUN_MERGE {
+        @Override
+        public void sort(int[] a) {
+            runMergeSort(a);
+        }
+    },
+    COUNTING {
+        @Override
+        public void sort(int[] a) {
+            countingSort(a);
+        }
+    },
+    RADIX {
+        @Override
+        public void sort(int[] a) {
+            radixSort(a);
+        }
+    },
+    /**
+     * Dual-pivot quicksort of the JDK
+     */
+    QUICK {
+        @Override
+        public void sort(int[] a) {
+            Arrays.sort(a);
+        }
+    },
+    /**
+     * Quicksort with branchless partitioning and sorting networks, see {@link BranchlessQuickSort}
+     */
+    BRANCHLESS_QUICK {
+        @Override
+        public void sort(int[] a) {
+            BranchlessQuickSort.sort(a);
+        }
+    },
+    ADAPTIVE {
+        @Override
+        public void sort(int[] a) {
+            SortProfile.of(a).recommend().sort(a);
+        }
+    };
+
+    /**
+     * Runs shorter than this are extended with insertion sort
+     */
+    private static final int MIN_RUN = 32;
+
+    /**
+     * Number of steps of quadratic algorithms between checks of the deadline
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 1 << 12;
+
+    /**
+     * Sorts the array in place
+     */
+    public abstract void sort(int[] a);
+
+    /**
+     * Sorts the array in place unless {@link System#nanoTime()} passes the deadline first.
+     * Only quadratic algorithms check the deadline, the others finish soon enough.
+     *
+     * @throws SortCancelledException if the deadline has passed, the array is partially sorted then
+     */
+    public void sort(int[] a, long deadline) {
+        sort(a);
+    }
+
+    private static void checkDeadline(long deadline) {
+        if (System.nanoTime() - deadline > 0) {
+            throw new SortCancelledException();
+        }
+    }
+
+    /**
+     * @return rough number of operations to sort {@code items} shuffled elements, used to schedule requests
+     */
+    public long estimateCost(int items) {
+        return (long) items * (32 - Integer.numberOfLeadingZeros(items));
+    }
+
+    private static long quadraticCost(int items) {
+        return (long) items * items / 4;
+    }
+
+    /**
+     * @return algorithm which actually sorts the array, differs from this only for {@link #ADAPTIVE}
+     */
+    public SortAlgorithm select(int[] a) {
+        return this == ADAPTIVE ? SortProfile.of(a).recommend() : this;
+    }
+
+    static void insertionSort(int[] a, int from, int to) {
+        insertionSort(a, from, to, from);
+    }
+
+    /**
+     * @param sorted end of the sorted prefix of the range
+     */
+    static void insertionSort(int[] a, int from, int to, int sorted) {
+        for (int i = Math.max(from + 1, sorted); i < to; i++) {
+            int value = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > value) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+
+    private static void runMergeSort(int[] a) {
+        int n = a.length;
+        if (n < 2) {
+            return;
+        }
+
+        // Bounds of runs, descending runs are reversed and short runs are extended to MIN_RUN
+        int[] bounds = new int[n / MIN_RUN + 2];
+        int runs = 0;
+        int i = 0;
+        while (i < n) {
+            int end = i + 1;
+            if (end < n && a[end] < a[i]) {
+                while (end < n && a[end] < a[end - 1]) {
+                    end++;
+                }
+                reverse(a, i, end);
+            } else {
+                while (end < n && a[end] >= a[end - 1]) {
+                    end++;
+                }
+            }
+            if (end - i < MIN_RUN) {
+                int forced = Math.min(n, i + MIN_RUN);
+                insertionSort(a, i, forced);
+                end = forced;
+            }
+            if (runs == bounds.length) {
+                bounds = Arrays.copyOf(bounds, runs * 2);
+            }
+            bounds[runs++] = i;
+            i = end;
+        }
+        if (runs == 1) {
+            return;
+        }
+
+        int[] buffer = new int[n];
+        int[] src = a;
+        int[] dst = buffer;
+        while (runs > 1) {
+            int merged = 0;
+            for (int r = 0; r < runs; r += 2) {
+                int from = bounds[r];
+                int middle = r + 1 < runs ? bounds[r + 1] : n;
+                int to = r + 2 < runs ? bounds[r + 2] : n;
+                merge(src, dst, from, middle, to);
+                bounds[merged++] = from;
+            }
+            runs = merged;
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != a) {
+            System.arraycopy(src, 0, a, 0, n);
+        }
+    }
+
+    private static void merge(int[] src, int[] dst, int from, int middle, int to) {
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            dst[k++] = src[j] < src[i] ? src[j++] : src[i++];
+        }
+        System.arraycopy(src, i, dst, k, middle - i);
+        System.arraycopy(src, j, dst, k + middle - i, to - j);
+    }
+
+    private static void reverse(int[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+
+    private static void countingSort(int[] a) {
+        if (a.length < 2) {
+            return;
+        }
+        int min = a[0];
+        int max = a[0];
+        for (int value : a) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        long range = (long) max - min + 1;
+        // Counts of a wide range take more memory and time than the array
+        if (range > 4L * a.length) {
+            radixSort(a);
+            return;
+        }
+        int[] counts = new int[(int) range];
+        for (int value : a) {
+            counts[value - min]++;
+        }
+        int k = 0;
+        for (int v = 0; v < counts.length; v++) {
+            for (int c = counts[v]; c > 0; c--) {
+                a[k++] = v + min;
+            }
+        }
+    }
+
+    /**
+     * LSD radix sort by bytes, sign bit is flipped so negative values go first
+     */
+    private static void radixSort(int[] a) {
+        int n = a.length;
+        if (n < 2) {
+            return;
+        }
+        int[] buffer = new int[n];
+        int[] src = a;
+        int[] dst = buffer;
+        int[] counts = new int[257];
+        for (int shift = 0; shift < 32; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int value : src) {
+                counts[(((value ^ Integer.MIN_VALUE) >>> shift) & 0xFF) + 1]++;
+            }
+            if (counts[1 + (((src[0] ^ Integer.MIN_VALUE) >>> shift) & 0xFF)] == n) {
+                // All values share this byte
+                continue;
+            }
+            for (int i = 0; i < 256; i++) {
+                counts[i + 1] += counts[i];
+            }
+            for (int value : src) {
+                dst[counts[((value ^ Integer.MIN_VALUE) >>> shift) & 0xFF]++] = value;
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != a) {
+            System.arraycopy(src, 0, a, 0, n);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.ifmo.java.benchmark.server.sort;
+
+/**
+ * Thrown by {@link SortAlgorithm#sort(int[], long)} when the deadline of the request passes.
+ */
+public class SortCancelledException extends RuntimeException {
+    public SortCancelledException() {
+        // Thrown on every expired request, the stack trace is not used
+        super("Deadline exceeded", null, false, false);
+    }
+}
@@ -0,0 +1,99 @@
+package ru.ifmo.java.benchmark.server.sort;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presortedness of an input measured in a single pass plus sampled inversions.
+ */
+public class SortProfile {
+    static final int SMALL_LENGTH = 32;
+    static final int RADIX_LENGTH = 1 << 16;
+    private static final int INVERSION_SAMPLES = 256;
+    // Longer inputs with no sampled inversions may still have more than a linear number of them
+    private static final int INSERTION_LENGTH = 8 * INVERSION_SAMPLES;
+
+    /**
+     * Number of elements
+     */
+    final public int length;
+    /**
+     * Natural non-descending or strictly descending runs
+     */
+    final public int runs;
+    /**
+     * Fraction of sampled pairs {@code i < j} with {@code a[i] > a[j]}, 0 for sorted and 1 for reversed input
+     */
+    final public double inversionRatio;
+    final public long range;
+
+    private SortProfile(int length, int runs, double inversionRatio, long range) {
+        this.length = length;
+        this.runs = runs;
+        this.inversionRatio = inversionRatio;
+        this.range = range;
+    }
+
+    public static SortProfile of(int[] a) {
+        int n = a.length;
+        if (n == 0) {
+            return new SortProfile(0, 0, 0, 0);
+        }
+
+        int min = a[0];
+        int max = a[0];
+        int runs = 1;
+        // 1 - ascending, -1 - descending, 0 - direction of the current run is unknown yet
+        int direction = 0;
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, a[i]);
+            max = Math.max(max, a[i]);
+            if (direction == 0) {
+                direction = a[i] < a[i - 1] ? -1 : 1;
+            } else if ((direction > 0) == (a[i] < a[i - 1])) {
+                runs++;
+                direction = 0;
+            }
+        }
+
+        int inversions = 0;
+        int samples = n < 2 ? 0 : INVERSION_SAMPLES;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int s = 0; s < samples; s++) {
+            int i = random.nextInt(n);
+            int j = random.nextInt(n);
+            if (i != j && a[Math.min(i, j)] > a[Math.max(i, j)]) {
+                inversions++;
+            }
+        }
+
+        return new SortProfile(n, runs, samples == 0 ? 0 : (double) inversions / samples, (long) max - min + 1);
+    }
+
+    /**
+     * @return the algorithm expected to be the fastest for this input
+     */
+    public SortAlgorithm recommend() {
+        if (length <= SMALL_LENGTH) {
+            return SortAlgorithm.INSERTION;
+        }
+        if (runs <= length / SMALL_LENGTH) {
+            return SortAlgorithm.RUN_MERGE;
+        }
+        // Insertion sort is linear in the number of inversions
+        if (length <= INSERTION_LENGTH && inversionRatio * length * length / 2 <= 4.0 * length) {
+            return SortAlgorithm.INSERTION;
+        }
+        if (range <= 2L * length) {
+            return SortAlgorithm.COUNTING;
+        }
+        if (length >= RADIX_LENGTH) {
+            return SortAlgorithm.RADIX;
+        }
+        return SortAlgorithm.QUICK;
+    }
+
+    @Override
+    public String toString() {
+        return "SortProfile{length=" + length + ", runs=" + runs + ", inversionRatio=" + inversionRatio + ", range=" + range + '}';
+    }
+}
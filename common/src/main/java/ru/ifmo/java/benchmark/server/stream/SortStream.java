@@ -0,0 +1,85 @@
+package ru.ifmo.java.benchmark.server.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Array of a connection received as {@code SortArrayChunk} requests.
+ * Every chunk is added as a sorted run, runs are merged as they arrive so that no more than log(chunks) of them are kept.
+ * Chunks may be added in any order, the stream is complete once the number of chunks announced by the last one is added.
+ * A connection streams one array at a time.
+ */
+public class SortStream {
+    private final long maxBytes;
+
+    // Sizes of runs strictly decrease from the bottom of the stack
+    private final List<int[]> runs = new ArrayList<>();
+    private long reservedBytes = 0;
+    private int addedChunks = 0;
+    private int expectedChunks = 0;
+
+    /**
+     * @param maxBytes bound of the items of the stream including the buffer of the final merge
+     */
+    public SortStream(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Must be called for a chunk when it is read, before it is queued for processing.
+     *
+     * @throws IOException if the stream would exceed the memory bound
+     */
+    public synchronized void reserve(int items) throws IOException {
+        // Merging keeps both the runs and the merged array
+        long bytes = 2L * 4 * items;
+        if (reservedBytes + bytes > maxBytes) {
+            throw new IOException("Stream exceeds " + maxBytes + " bytes");
+        }
+        reservedBytes += bytes;
+    }
+
+    /**
+     * @param run        sorted items of a chunk
+     * @param chunkCount number of chunks in the stream if this is the last chunk, zero otherwise
+     * @return sorted array of the stream if it is complete, {@code null} otherwise
+     */
+    public synchronized int[] add(int[] run, int chunkCount) {
+        runs.add(run);
+        while (runs.size() >= 2 && runs.get(runs.size() - 1).length >= runs.get(runs.size() - 2).length) {
+            mergeTop();
+        }
+        addedChunks++;
+        if (chunkCount > 0) {
+            expectedChunks = chunkCount;
+        }
+        if (addedChunks != expectedChunks) {
+            return null;
+        }
+
+        while (runs.size() >= 2) {
+            mergeTop();
+        }
+        int[] result = runs.isEmpty() ? new int[0] : runs.remove(0);
+        reservedBytes = 0;
+        addedChunks = 0;
+        expectedChunks = 0;
+        return result;
+    }
+
+    private void mergeTop() {
+        int[] right = runs.remove(runs.size() - 1);
+        int[] left = runs.remove(runs.size() - 1);
+        int[] merged = new int[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length && j < right.length) {
+            merged[k++] = right[j] < left[i] ? right[j++] : left[i++];
+        }
+        System.arraycopy(left, i, merged, k, left.length - i);
+        System.arraycopy(right, j, merged, k + left.length - i, right.length - j);
+        runs.add(merged);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.ifmo.java.benchmark.server.wait;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * How idle workers wait for requests and idle selector loops wait for events.
+ * Strategies other than {@link #BLOCKING} trade CPU for the latency of waking a parked thread up.
+ */
+public enum WaitStrategy {
+    /**
+     * Workers park in the queue and selectors block in {@code select()}
+     */
+    BLOCKING {
+        @Override
+        public boolean idle(int attempt) {
+            return false;
+        }
+    },
+    /**
+     * Poll the queue and {@code selectNow()} without pause, a thread keeps a CPU busy while idle
+     */
+    BUSY_SPIN {
+        @Override
+        public boolean idle(int attempt) {
+            return true;
+        }
+    },
+    /**
+     * Spin for a while, then give the CPU up with {@code Thread.yield()} between polls
+     */
+    SPIN_YIELD {
+        @Override
+        public boolean idle(int attempt) {
+            if (attempt >= SPINS) {
+                Thread.yield();
+            }
+            return true;
+        }
+    },
+    /**
+     * Spin, then yield, then park as {@link #BLOCKING} does, so only short idle periods cost CPU
+     */
+    SPIN_PARK {
+        @Override
+        public boolean idle(int attempt) {
+            if (attempt < SPINS) {
+                return true;
+            }
+            if (attempt < SPINS + YIELDS) {
+                Thread.yield();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final int SPINS = 1000;
+    private static final int YIELDS = 100;
+
+    /**
+     * Called by a thread which found nothing to do {@code attempt} times in a row
+     *
+     * @return false if the thread should block until there is something to do
+     */
+    public abstract boolean idle(int attempt);
+
+    /**
+     * @return the next attempt, which does not overflow while a thread spins
+     */
+    public static int next(int attempt) {
+        return attempt == Integer.MAX_VALUE ? attempt : attempt + 1;
+    }
+
+    /**
+     * Selector loops must handle tasks handed to them after every call, since {@code selectNow()}
+     * clears wakeups which happen while the loop polls.
+     *
+     * @param attempt number of preceding calls in a row which selected nothing
+     */
+    public int select(Selector selector, int attempt) throws IOException {
+        return idle(attempt) ? selector.selectNow() : selector.select();
+    }
+}
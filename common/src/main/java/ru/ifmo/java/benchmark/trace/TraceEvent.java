@@ -0,0 +1,21 @@
+package ru.ifmo.java.benchmark.trace;
+
+/**
+ * Arrival of a {@code SortArrayRequest} recorded by a server.
+ */
+public class TraceEvent {
+    // Nanoseconds since the beginning of the trace
+    final public long time;
+    // Connection of the request, unique within the trace
+    final public int connection;
+    final public int items;
+    // Hash of the items, equal arrays have equal ids
+    final public long payloadId;
+
+    public TraceEvent(long time, int connection, int items, long payloadId) {
+        this.time = time;
+        this.connection = connection;
+        this.items = items;
+        this.payloadId = payloadId;
+    }
+}
@@ -0,0 +1,47 @@
+package ru.ifmo.java.benchmark.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads a trace written by {@link TraceRecorder} event by event, so traces larger than memory can be replayed.
+ */
+public class TraceReader implements Closeable {
+    private final DataInputStream input;
+
+    public TraceReader(Path path) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        if (input.readInt() != TraceRecorder.MAGIC || input.readInt() != TraceRecorder.RECORD_SIZE) {
+            input.close();
+            throw new IOException("Not a trace: " + path);
+        }
+    }
+
+    /**
+     * @return next event, {@code null} at the end of the trace
+     */
+    public TraceEvent next() throws IOException {
+        long time;
+        try {
+            time = input.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        // A record cut by a crash of the server ends the trace
+        try {
+            return new TraceEvent(time, input.readInt(), input.readInt(), input.readLong());
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,67 @@
+package ru.ifmo.java.benchmark.trace;
+
+import ru.ifmo.java.benchmark.protocol.Protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes arrivals of requests to a trace file: a header of {@link #MAGIC} and {@link #RECORD_SIZE}
+ * followed by fixed-width records in the order of {@link TraceEvent} fields.
+ * <p>
+ * Records are buffered, a write costs a short critical section and no allocations.
+ * A failed write disables the recorder instead of failing the request.
+ */
+public class TraceRecorder implements Closeable {
+    static final int MAGIC = 0x54524345;
+    static final int RECORD_SIZE = 24;
+
+    private final DataOutputStream output;
+    private final long startTime = System.nanoTime();
+    private boolean failed = false;
+
+    public TraceRecorder(Path path) throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        output.writeInt(MAGIC);
+        output.writeInt(RECORD_SIZE);
+    }
+
+    /**
+     * @param arrivalTime {@link System#nanoTime()} when the first byte of the request was received
+     */
+    public void record(long arrivalTime, int connection, Protocol.Array data) {
+        int items = data.getItemCount();
+        long payloadId = payloadId(data);
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+            try {
+                output.writeLong(arrivalTime - startTime);
+                output.writeInt(connection);
+                output.writeInt(items);
+                output.writeLong(payloadId);
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    static long payloadId(Protocol.Array data) {
+        // FNV-1a over the items
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < data.getItemCount(); i++) {
+            hash = (hash ^ data.getItem(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -4,9 +4,18 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.launcher.GarbageCollector;
+import ru.ifmo.java.benchmark.launcher.JvmOptions;
+import ru.ifmo.java.benchmark.launcher.ServerProcess;
+import ru.ifmo.java.benchmark.results.SampleStore;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.trace.TraceReader;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -45,11 +54,118 @@ public class BenchmarkTest {
             Assert.assertTrue(point.avgClientWaitingTime > 0);
             Assert.assertTrue(point.clientProcessTime > 0);
             Assert.assertTrue(point.requestProcessTime > 0);
+            Assert.assertTrue(point.phaseTimes.processTime > 0);
+            Assert.assertTrue(point.latencySplit.serverTime > 0);
+            Assert.assertTrue(point.pauseStats.allocatedBytesPerRequest > 0);
+            Assert.assertTrue(point.pauseStats.pausedRequests <= 20 * point.clients);
         });
 
         Assert.assertEquals(5, evaluate.size());
 
+        SampleStore store = benchmark.getSampleStore();
+        for (int i = 0; i < evaluate.size(); i++) {
+            Benchmark.Point point = evaluate.get(i);
+            Assert.assertTrue(point.sampleTo > point.sampleFrom);
+            SampleStore.Cursor cursor = store.cursor(point.sampleFrom, point.sampleTo);
+            while (cursor.next()) {
+                Assert.assertEquals(i, cursor.getPoint());
+                Assert.assertTrue(cursor.getClient() < point.clients);
+                Assert.assertTrue(cursor.getClientReceiveTime() >= cursor.getClientSubmitTime());
+            }
+        }
+
         server.close();
         serverWorker.join();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void runBenchmarkWithAsyncClients() throws IOException {
+        Server server = makeServer();
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        List<Benchmark.Point> evaluate;
+        try {
+            // Every client has to send a request before the first one is done
+            evaluate = new Benchmark(HOST, PORT).setClientEngine(ClientEngine.ASYNC)
+                    .evaluate(10, Arrays.asList(100, 200), Arrays.asList(10, 10), Arrays.asList(10, 10));
+        } finally {
+            server.close();
+            serverWorker.join();
+        }
+
+        Assert.assertEquals(2, evaluate.size());
+        evaluate.forEach(point -> Assert.assertTrue(point.avgClientWaitingTime > 0));
+    }
+
+    @Test
+    public void runBenchmarkWithMultiplexedClients() throws IOException {
+        Server server = makeServer();
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        List<Benchmark.Point> evaluate;
+        try {
+            evaluate = new Benchmark(HOST, PORT).setClientEngine(ClientEngine.MULTIPLEXED).setMultiplexedConnections(4)
+                    .evaluate(10, Arrays.asList(100, 200), Arrays.asList(8, 8), Arrays.asList(10, 10));
+        } finally {
+            server.close();
+            serverWorker.join();
+        }
+
+        Assert.assertEquals(2, evaluate.size());
+        evaluate.forEach(point -> Assert.assertTrue(point.avgClientWaitingTime > 0));
+    }
+
+    @Test
+    public void replayRecordedTrace() throws IOException {
+        Path traceDirectory = Files.createTempDirectory("trace");
+        Server server = Server.create(HOST, PORT, new ServerConfig().setTraceDirectory(traceDirectory), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+        try {
+            new Benchmark(HOST, PORT).evaluate(5, Arrays.asList(100, 200), Arrays.asList(3, 3), Arrays.asList(10, 10));
+        } finally {
+            server.close();
+            serverWorker.join();
+        }
+
+        Path trace = traceDirectory.resolve(serverType.toString().toLowerCase() + "-" + PORT + ".trace");
+        long recorded = 0;
+        try (TraceReader reader = new TraceReader(trace)) {
+            while (reader.next() != null) {
+                recorded++;
+            }
+        }
+        Assert.assertTrue(recorded > 0);
+
+        server = makeServer();
+        serverWorker = CompletableFuture.runAsync(server::run);
+        ReplayDriver.Result result;
+        try {
+            result = new ReplayDriver(HOST, PORT).setTimeScale(10).replay(trace);
+        } finally {
+            server.close();
+            serverWorker.join();
+        }
+
+        Assert.assertEquals(recorded, result.requests);
+        Assert.assertEquals(0, result.failed);
+        Assert.assertEquals(recorded, result.sampleTo - result.sampleFrom);
+        Assert.assertTrue(result.summary.processTimeRequest > 0);
+    }
+
+    @Test
+    public void runBenchmarkOnForkedServer() throws IOException {
+        Path workDirectory = Files.createTempDirectory("server");
+        ServerProcess server = ServerProcess.start(serverType, HOST, PORT, 4,
+                new JvmOptions().setHeapSize("256m").setGarbageCollector(GarbageCollector.SERIAL), workDirectory);
+        List<Benchmark.Point> evaluate;
+        try {
+            evaluate = new Benchmark(HOST, PORT).evaluate(5, Arrays.asList(100, 200), Arrays.asList(3, 3), Arrays.asList(10, 10));
+        } finally {
+            server.close();
+        }
+
+        Assert.assertEquals(2, evaluate.size());
+        evaluate.forEach(point -> Assert.assertTrue(point.requestProcessTime > 0));
+        Assert.assertTrue(Files.exists(server.getGcLog()));
+    }
+}
@@ -4,12 +4,24 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import ru.ifmo.java.benchmark.client.AsyncClient;
 import ru.ifmo.java.benchmark.client.Client;
+import ru.ifmo.java.benchmark.client.DeadlineExceededException;
+import ru.ifmo.java.benchmark.client.MultiplexingClient;
 import ru.ifmo.java.benchmark.server.Server;
+import ru.ifmo.java.benchmark.server.ServerConfig;
+import ru.ifmo.java.benchmark.server.affinity.CpuSet;
+import ru.ifmo.java.benchmark.server.affinity.ThreadPlacement;
+import ru.ifmo.java.benchmark.server.nonblocking.Transport;
+import ru.ifmo.java.benchmark.server.schedule.SchedulingPolicy;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+import ru.ifmo.java.benchmark.server.wait.WaitStrategy;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(value = Parameterized.class)
 public class ClientServerInteractionTest {
@@ -68,8 +80,265 @@ public class ClientServerInteractionTest {
 
     @Test
     public void testSort() throws IOException {
-        Server server = makeServer();
+        checkSort(makeServer());
+    }
+
+    @Test
+    public void testSortWithSeveralAcceptors() throws IOException {
+        checkSort(Server.create(HOST, PORT, new ServerConfig().setAcceptors(4), serverType));
+    }
+
+    @Test
+    public void testSortWithResponseCache() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setResponseCacheBytes(1 << 20), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        Client client = makeClient();
+        List<Integer> in = makeRandomArray(1000);
+        List<Integer> expected = new ArrayList<>(in);
+        Collections.sort(expected);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(expected, client.sortArray(in).join().getBody());
+        }
+        Assert.assertEquals(expected, client.sortArray(expected).join().getBody());
+
+        Assert.assertEquals(2, server.getMetrics().getCacheHits());
+        Assert.assertEquals(2, server.getMetrics().getCacheMisses());
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testSortStreaming() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setStreamChunkSize(300).setSortAlgorithm(SortAlgorithm.QUICK), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        Client client = makeClient();
+        for (int length : Arrays.asList(0, 1, 1000, 5000)) {
+            List<Integer> in = makeRandomArray(length);
+            List<Integer> expected = new ArrayList<>(in);
+            Collections.sort(expected);
+            Assert.assertEquals(expected, client.sortArrayStreaming(in, 700).join().getBody());
+        }
+        // Regular requests still work on the same connection
+        List<Integer> in = makeRandomArray(100);
+        List<Integer> expected = new ArrayList<>(in);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, client.sortArray(in).join().getBody());
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testSortWithEachTransport() throws IOException {
+        for (Transport transport : Transport.available().values()) {
+            checkSort(Server.create(HOST, PORT, new ServerConfig().setTransport(transport), serverType));
+        }
+    }
+
+    @Test
+    public void testSortWithPinnedThreads() throws IOException {
+        ThreadPlacement placement = new ThreadPlacement(CpuSet.parse("0"), CpuSet.parse("0-" + (Runtime.getRuntime().availableProcessors() - 1)));
+        checkSort(Server.create(HOST, PORT, new ServerConfig().setThreadPlacement(placement), serverType));
+        checkSort(Server.create(HOST, PORT, new ServerConfig().setThreadPlacement(ThreadPlacement.numaLocal(0)), serverType));
+    }
+
+    @Test
+    public void testSortWithEachWaitStrategy() throws IOException {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            checkSort(Server.create(HOST, PORT, new ServerConfig().setWaitStrategy(waitStrategy), serverType));
+        }
+    }
+
+    @Test
+    public void testSortWithTinyMemoryBudget() throws IOException {
+        // Every frame exceeds the budgets, so reads of all connections are serialized
+        checkSort(Server.create(HOST, PORT, new ServerConfig().setConnectionMemoryBytes(1).setMemoryBytes(1), serverType));
+    }
+
+    @Test
+    public void testFrameSizeLimit() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setMaxFrameSize(1000), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        Client client = makeClient();
+        try {
+            client.sortArray(makeRandomArray(1000)).join();
+            Assert.fail("Connection must be closed");
+        } catch (CompletionException ignored) {
+        }
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testAsyncClient() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setStreamChunkSize(300), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        AsyncClient client = new AsyncClient(HOST, PORT);
+        List<List<Integer>> inputs = new ArrayList<>();
+        List<CompletableFuture<Client.Response<List<Integer>>>> responses = new ArrayList<>();
+        // Submitted at once, exchanged one by one
+        for (int i = 0; i < 10; i++) {
+            List<Integer> in = makeRandomArray(100 * i);
+            inputs.add(in);
+            responses.add(i % 2 == 0 ? client.sortArray(in) : client.sortArrayStreaming(in, 70));
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            List<Integer> expected = new ArrayList<>(inputs.get(i));
+            Collections.sort(expected);
+            Assert.assertEquals(expected, responses.get(i).join().getBody());
+        }
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testMultiplexingClient() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setStreamChunkSize(300), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        MultiplexingClient client = new MultiplexingClient(HOST, PORT);
+        List<List<Integer>> inputs = new ArrayList<>();
+        List<CompletableFuture<Client.Response<List<Integer>>>> responses = new ArrayList<>();
+        // Larger arrays first, so that smaller ones may be answered before them
+        for (int i = 0; i < 20; i++) {
+            List<Integer> in = makeRandomArray(100 * (20 - i));
+            inputs.add(in);
+            responses.add(i % 4 == 3 ? client.sortArrayStreaming(in, 70) : client.sortArray(in));
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            List<Integer> expected = new ArrayList<>(inputs.get(i));
+            Collections.sort(expected);
+            Assert.assertEquals(expected, responses.get(i).join().getBody());
+        }
+        Assert.assertEquals(0, client.getPending());
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testPipelinedRequestsBeyondWindow() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setRequestWindow(1), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        MultiplexingClient client = new MultiplexingClient(HOST, PORT);
+        List<List<Integer>> inputs = new ArrayList<>();
+        List<CompletableFuture<Client.Response<List<Integer>>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            List<Integer> in = makeRandomArray(500);
+            inputs.add(in);
+            responses.add(client.sortArray(in));
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            List<Integer> expected = new ArrayList<>(inputs.get(i));
+            Collections.sort(expected);
+            Assert.assertEquals(expected, responses.get(i).join().getBody());
+        }
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testInlineProcessing() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setInlineThresholdNanos(TimeUnit.MILLISECONDS.toNanos(1)), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        MultiplexingClient client = new MultiplexingClient(HOST, PORT);
+        List<List<Integer>> inputs = new ArrayList<>();
+        List<CompletableFuture<Client.Response<List<Integer>>>> responses = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // Small arrays are cheap enough to be processed inline, large ones are not
+            List<Integer> in = makeRandomArray(i % 5 == 0 ? 20000 : 10);
+            inputs.add(in);
+            responses.add(client.sortArray(in));
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            List<Integer> expected = new ArrayList<>(inputs.get(i));
+            Collections.sort(expected);
+            Assert.assertEquals(expected, responses.get(i).join().getBody());
+        }
+        if (serverType == Server.ServerType.NON_BLOCKING || serverType == Server.ServerType.ASYNC) {
+            Assert.assertTrue(server.getMetrics().getInlineRequests() > 0);
+            Assert.assertTrue(server.getMetrics().getInlineRequests() < inputs.size());
+        } else {
+            Assert.assertEquals(0, server.getMetrics().getInlineRequests());
+        }
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
+
+    @Test
+    public void testSchedulingPolicies() throws IOException {
+        for (SchedulingPolicy policy : SchedulingPolicy.values()) {
+            Server server = Server.create(HOST, PORT, new ServerConfig().setThreads(2).setSchedulingPolicy(policy).setRateLimit(20000, 1000), serverType);
+            CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+            MultiplexingClient client = new MultiplexingClient(HOST, PORT);
+            List<List<Integer>> inputs = new ArrayList<>();
+            List<CompletableFuture<Client.Response<List<Integer>>>> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                List<Integer> in = makeRandomArray(i % 5 == 0 ? 2000 : 50);
+                inputs.add(in);
+                responses.add(client.setPriority(i % 2).sortArray(in));
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                List<Integer> expected = new ArrayList<>(inputs.get(i));
+                Collections.sort(expected);
+                Assert.assertEquals(expected, responses.get(i).join().getBody());
+            }
+            if (serverType != Server.ServerType.NAIVE_BLOCKING) {
+                Assert.assertTrue(server.getMetrics().getRateLimitedRequests() > 0);
+            }
+
+            client.close();
+            server.close();
+            serverWorker.join();
+        }
+    }
+
+    @Test
+    public void testDeadlineExceeded() throws IOException {
+        Server server = Server.create(HOST, PORT, new ServerConfig().setSortAlgorithm(SortAlgorithm.GNOME), serverType);
+        CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
+
+        Client client = makeClient();
+        try {
+            // Takes seconds to sort without cancellation
+            client.setTimeout(20).sortArray(makeRandomArray(50000)).join();
+            Assert.fail("Deadline must be exceeded");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+        Assert.assertEquals(1, server.getMetrics().getDeadlineExceeded());
+
+        // The connection is still usable
+        List<Integer> in = makeRandomArray(100);
+        List<Integer> expected = new ArrayList<>(in);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, client.setTimeout(0).sortArray(in).join().getBody());
+
+        client.close();
+        server.close();
+        serverWorker.join();
+    }
 
+    private void checkSort(Server server) throws IOException {
         CompletableFuture<Void> serverWorker = CompletableFuture.runAsync(server::run);
 
         List<Client> clients = new ArrayList<>();
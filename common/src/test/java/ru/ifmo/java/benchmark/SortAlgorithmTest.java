@@ -0,0 +1,108 @@
+package ru.ifmo.java.benchmark;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import ru.ifmo.java.benchmark.server.sort.SortAlgorithm;
+import ru.ifmo.java.benchmark.server.sort.SortCancelledException;
+import ru.ifmo.java.benchmark.server.sort.SortProfile;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(value = Parameterized.class)
+public class SortAlgorithmTest {
+    final SortAlgorithm algorithm;
+
+    public SortAlgorithmTest(SortAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<SortAlgorithm> data() {
+        return Arrays.asList(SortAlgorithm.values());
+    }
+
+    static private int[] toArray(List<Integer> items) {
+        return items.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testSortsAllDistributions() {
+        Random random = new Random(42);
+        for (InputDistribution distribution : InputDistribution.values()) {
+            for (int length : Arrays.asList(0, 1, 2, 31, 33, 1000, 3000)) {
+                int[] array = toArray(distribution.generate(length, random));
+                int[] expected = array.clone();
+                Arrays.sort(expected);
+                algorithm.sort(array);
+                Assert.assertArrayEquals(distribution + " " + length, expected, array);
+            }
+        }
+    }
+
+    @Test
+    public void testSortsBeforeDeadline() {
+        int[] array = toArray(InputDistribution.SHUFFLED.generate(3000, new Random(3)));
+        int[] expected = array.clone();
+        Arrays.sort(expected);
+        algorithm.sort(array, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        Assert.assertArrayEquals(expected, array);
+    }
+
+    @Test
+    public void testCancelsAfterDeadline() {
+        int[] array = toArray(InputDistribution.SHUFFLED.generate(50000, new Random(5)));
+        long start = System.nanoTime();
+        try {
+            algorithm.sort(array, start);
+        } catch (SortCancelledException e) {
+            return;
+        }
+        Assert.assertTrue("only fast algorithms may ignore the deadline", algorithm.estimateCost(array.length) < (long) array.length * array.length / 4);
+    }
+
+    @Test
+    public void testSortsExtremeValues() {
+        int[] array = {Integer.MAX_VALUE, 0, Integer.MIN_VALUE, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        int[] expected = array.clone();
+        Arrays.sort(expected);
+        algorithm.sort(array);
+        Assert.assertArrayEquals(expected, array);
+    }
+
+    @Test
+    public void testMatchesGnomeSort() {
+        Random random = new Random(7);
+        for (int length = 0; length < 300; length++) {
+            int[] array = new int[length];
+            for (int i = 0; i < length; i++) {
+                array[i] = random.nextInt(length / 4 + 1) - length / 8;
+            }
+            int[] expected = array.clone();
+            SortAlgorithm.GNOME.sort(expected);
+            algorithm.sort(array);
+            Assert.assertArrayEquals(String.valueOf(length), expected, array);
+        }
+    }
+
+    @Test
+    public void testAdaptiveSelection() {
+        Random random = new Random(42);
+        Assert.assertEquals(SortAlgorithm.INSERTION, SortProfile.of(toArray(InputDistribution.SHUFFLED.generate(20, random))).recommend());
+        Assert.assertEquals(SortAlgorithm.RUN_MERGE, SortProfile.of(toArray(InputDistribution.SORTED.generate(5000, random))).recommend());
+        Assert.assertEquals(SortAlgorithm.RUN_MERGE, SortProfile.of(toArray(InputDistribution.REVERSED.generate(5000, random))).recommend());
+        Assert.assertEquals(SortAlgorithm.COUNTING, SortProfile.of(toArray(InputDistribution.FEW_UNIQUE.generate(5000, random))).recommend());
+        Assert.assertEquals(SortAlgorithm.QUICK, SortProfile.of(toArray(InputDistribution.SHUFFLED.generate(5000, random))).recommend());
+        Assert.assertEquals(SortAlgorithm.RADIX, SortProfile.of(toArray(InputDistribution.SHUFFLED.generate(100000, random))).recommend());
+        // Sampled inversions of large nearly sorted inputs are often zero
+        int[] nearlySorted = toArray(InputDistribution.NEARLY_SORTED.generate(200000, random));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNotEquals(SortAlgorithm.INSERTION, SortProfile.of(nearlySorted).recommend());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.ifmo.java.benchmark.gui.client;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -7,6 +8,12 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import ru.ifmo.java.benchmark.Benchmark;
+import ru.ifmo.java.benchmark.InputDistribution;
+import ru.ifmo.java.benchmark.client.ClientEngine;
+import ru.ifmo.java.benchmark.launcher.GcLogSummary;
+import ru.ifmo.java.benchmark.launcher.JvmOptions;
+import ru.ifmo.java.benchmark.launcher.ServerProcess;
+import ru.ifmo.java.benchmark.results.SampleStore;
 import ru.ifmo.java.benchmark.server.Server;
 
 import javax.swing.*;
@@ -15,6 +22,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.NumberFormat;
 import java.util.List;
 import java.util.*;
@@ -23,6 +31,7 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,14 +47,23 @@ public class Client {
     private int naiveBlockingPort;
     private int blockingPort;
     private int asyncPort;
+    private int nettyPort;
+    private int reactivePort;
     private int nonBlockingPort;
     private Server.ServerType selectedType;
+    private InputDistribution inputDistribution;
+    private ClientEngine clientEngine;
     private int requestCount;
     private ChangeParameter changeParameter;
     private Triple<Integer, Integer, Integer> changeRange; // from to delta
     private int valueN;
     private int valueM;
     private int valueDELTA;
+    private int streamChunkSize;
+    private int multiplexedConnections;
+    private int requestTimeoutMs;
+    // Flags of a server process forked for every run, null to use a running server
+    private String forkedServerFlags;
 
     public Client() {
         setDefaults();
@@ -93,11 +111,16 @@ public class Client {
             JPanel benchProp = new JPanel(new GridLayout(1, 0));
             benchProp.add(createEnumSelector(Server.ServerType.class, () -> selectedType, in -> selectedType = in));
             benchProp.add(createEnumSelector(ChangeParameter.class, () -> changeParameter, in -> changeParameter = in));
+            benchProp.add(createEnumSelector(InputDistribution.class, () -> inputDistribution, in -> inputDistribution = in));
+            benchProp.add(createEnumSelector(ClientEngine.class, () -> clientEngine, in -> clientEngine = in));
             benchProp.add(createRangeInputField(() -> changeRange, in -> changeRange = in));
             benchProp.add(createInputNumberField("Delta value, ms", () -> valueDELTA, in -> valueDELTA = in));
             benchProp.add(createInputNumberField("Array size", () -> valueN, in -> valueN = in));
             benchProp.add(createInputNumberField("Client count", () -> valueM, in -> valueM = in));
             benchProp.add(createInputNumberField("Request count", () -> requestCount, in -> requestCount = in));
+            benchProp.add(createInputNumberField("Stream chunk (0 - off)", () -> streamChunkSize, in -> streamChunkSize = in));
+            benchProp.add(createInputNumberField("Multiplexed connections", () -> multiplexedConnections, in -> multiplexedConnections = in));
+            benchProp.add(createInputNumberField("Timeout, ms (0 - off)", () -> requestTimeoutMs, in -> requestTimeoutMs = in));
             benchProp.add(createRunBenchButton(() -> CompletableFuture.supplyAsync(() -> {
                 try {
                     return runBench();
@@ -203,6 +226,29 @@ public class Client {
         ));
     }
 
+    private <T> ChartPanel createMultiSeriesChart(String name, List<Double> x, List<T> y, List<Pair<String, Function<T, Float>>> series) {
+        XYSeriesCollection collection = new XYSeriesCollection();
+
+        series.forEach(s -> {
+            XYSeries xySeries = new XYSeries(s.getLeft());
+            for (int i = 0; i < x.size(); i++) {
+                xySeries.add(x.get(i), s.getRight().apply(y.get(i)));
+            }
+            collection.addSeries(xySeries);
+        });
+
+        return new ChartPanel(ChartFactory.createScatterPlot(
+                name,
+                changeParameter.toString(),
+                "time, ms",
+                collection,
+                PlotOrientation.VERTICAL,
+                true,
+                true,
+                false
+        ));
+    }
+
     private JButton createSaveResultsButton(List<Benchmark.Point> points) {
         JButton saveButton = new JButton("Save");
         saveButton.addActionListener(e -> runInUiThread(() -> {
@@ -215,8 +261,15 @@ public class Client {
 
             try (BufferedWriter outFile = new BufferedWriter(new FileWriter(new File(SaveAs.getSelectedFile() + ".csv")))) {
                 String file = points.stream()
-                        .map(p -> String.format("%d,%d,%d,%f,%f,%f", p.clients, p.elements, p.interval, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime))
-                        .collect(Collectors.joining("\n", "clients,elements,interval,requestProcessTime,clientProcessTime,responseTime\n", ""));
+                        .map(p -> String.format("%d,%d,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%d,%f,%s,%d", p.clients, p.elements, p.interval, p.requestProcessTime, p.clientProcessTime, p.avgClientWaitingTime,
+                                p.phaseTimes.readTime, p.phaseTimes.parseTime, p.phaseTimes.queueWaitTime, p.phaseTimes.processTime,
+                                p.phaseTimes.handoffTime, p.phaseTimes.serializeTime, p.phaseTimes.outputWaitTime,
+                                p.latencySplit.clientQueueTime, p.latencySplit.requestNetworkTime, p.latencySplit.serverTime, p.latencySplit.responseNetworkTime,
+                                p.pauseStats.serverPauseTime, p.pauseStats.clientPauseTime, p.pauseStats.pausedRequests, p.pauseStats.allocatedBytesPerRequest, p.algorithm, p.timeouts))
+                        .collect(Collectors.joining("\n", "clients,elements,interval,requestProcessTime,clientProcessTime,responseTime," +
+                                "readTime,parseTime,queueWaitTime,processTime,handoffTime,serializeTime,outputWaitTime," +
+                                "clientQueueTime,requestNetworkTime,serverTime,responseNetworkTime," +
+                                "serverGcPauseTime,clientGcPauseTime,gcPausedRequests,allocatedBytesPerRequest,algorithm,timeouts\n", ""));
                 outFile.write(file);
             } catch (IOException err) {
                 JOptionPane.showMessageDialog(null, err.getMessage());
@@ -226,35 +279,98 @@ public class Client {
         return saveButton;
     }
 
+    private JButton createSaveSamplesButton(SampleStore store, List<Benchmark.Point> points) {
+        JButton saveButton = new JButton("Save samples");
+        saveButton.addActionListener(e -> runInUiThread(() -> {
+            final JFileChooser SaveAs = new JFileChooser();
+            SaveAs.setApproveButtonText("Save");
+            int actionDialog = SaveAs.showOpenDialog(null);
+            if (actionDialog != JFileChooser.APPROVE_OPTION || points.isEmpty()) {
+                return;
+            }
+
+            // Streamed record by record, a run may have more samples than fit in memory as strings
+            try (BufferedWriter outFile = new BufferedWriter(new FileWriter(new File(SaveAs.getSelectedFile() + ".samples.csv")))) {
+                outFile.write("point,client,clientSubmitTime,clientSendTime,serverReceiveTime,serverSendTime,clientReceiveTime," +
+                        "requestProcessTime,clientProcessTime,readTime,parseTime,queueWaitTime,processTime,handoffTime,serializeTime,outputWaitTime," +
+                        "serverGcPauseTime,clientGcPauseTime,allocatedBytes,algorithm\n");
+                SampleStore.Cursor cursor = store.cursor(points.get(0).sampleFrom, points.get(points.size() - 1).sampleTo);
+                while (cursor.next()) {
+                    outFile.write(String.format("%d,%d,%d,%d,%d,%d,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%d,%s\n", cursor.getPoint(), cursor.getClient(),
+                            cursor.getClientSubmitTime(), cursor.getClientSendTime(), cursor.getServerReceiveTime(), cursor.getServerSendTime(), cursor.getClientReceiveTime(),
+                            cursor.getProcessTimeRequest(), cursor.getProcessTimeClient(),
+                            cursor.getPhaseTime(0), cursor.getPhaseTime(1), cursor.getPhaseTime(2), cursor.getPhaseTime(3),
+                            cursor.getPhaseTime(4), cursor.getPhaseTime(5), cursor.getPhaseTime(6),
+                            cursor.getServerPauseTime(), cursor.getClientPauseTime(), cursor.getAllocatedBytes(), cursor.getAlgorithm()));
+                }
+            } catch (IOException err) {
+                JOptionPane.showMessageDialog(null, err.getMessage());
+            }
+        }));
+
+        return saveButton;
+    }
+
     private JPanel runBench() throws IOException {
         StringBuilder benchInfo = new StringBuilder();
 
         benchInfo.append("<html>");
         benchInfo.append("Architecture: ").append(selectedType.toString()).append("<br>");
         benchInfo.append("Request count: ").append(requestCount).append("<br>");
+        benchInfo.append("Input: ").append(inputDistribution.toString()).append("<br>");
+        benchInfo.append("Client: ").append(clientEngine.toString()).append("<br>");
+        if (clientEngine.isMultiplexing()) {
+            benchInfo.append("Connections: ").append(multiplexedConnections).append("<br>");
+        }
+        if (streamChunkSize > 0) {
+            benchInfo.append("Stream chunk: ").append(streamChunkSize).append("<br>");
+        }
+        if (requestTimeoutMs > 0) {
+            benchInfo.append("Timeout, ms: ").append(requestTimeoutMs).append("<br>");
+        }
+
 
+        ServerProcess serverProcess = null;
+        if (forkedServerFlags != null) {
+            serverProcess = ServerProcess.start(selectedType, hostAddress, getPort(selectedType), 4,
+                    new JvmOptions().addFlags(forkedServerFlags.trim().isEmpty() ? new String[0] : forkedServerFlags.trim().split("\\s+")),
+                    Files.createTempDirectory("server"));
+            benchInfo.append("Server JVM: ").append(forkedServerFlags).append("<br>");
+        }
 
-        Benchmark benchmark = new Benchmark(hostAddress, getPort(selectedType));
-        benchmark.warmUp();
+        Benchmark benchmark = new Benchmark(hostAddress, getPort(selectedType)).setInputDistribution(inputDistribution).setStreamChunkSize(streamChunkSize)
+                .setClientEngine(clientEngine).setMultiplexedConnections(multiplexedConnections)
+                .setRequestTimeout(requestTimeoutMs);
         List<Integer> range = range(changeRange.getLeft(), changeRange.getMiddle(), changeRange.getRight());
 
         List<Benchmark.Point> evaluate = null;
-        switch (changeParameter) {
-            case N:
-                evaluate = benchmark.evaluate(requestCount, range, values(valueM, range.size()), values(valueDELTA, range.size()));
-                range = evaluate.stream().map(point -> point.elements).collect(Collectors.toList());
-                benchInfo.append("Client count: ").append(valueM).append("<br>").append("Delta: ").append(valueDELTA).append("<br>");
-                break;
-            case M:
-                evaluate = benchmark.evaluate(requestCount, values(valueN, range.size()), range, values(valueDELTA, range.size()));
-                range = evaluate.stream().map(point -> point.clients).collect(Collectors.toList());
-                benchInfo.append("Array size: ").append(valueN).append("<br>").append("Delta: ").append(valueDELTA).append("<br>");
-                break;
-            case DELTA:
-                evaluate = benchmark.evaluate(requestCount, values(valueN, range.size()), values(valueM, range.size()), range);
-                range = evaluate.stream().map(point -> point.interval).collect(Collectors.toList());
-                benchInfo.append("Array size: ").append(valueN).append("<br>").append("Client count: ").append(valueM).append("<br>");
-                break;
+        try {
+            benchmark.warmUp();
+            switch (changeParameter) {
+                case N:
+                    evaluate = benchmark.evaluate(requestCount, range, values(valueM, range.size()), values(valueDELTA, range.size()));
+                    range = evaluate.stream().map(point -> point.elements).collect(Collectors.toList());
+                    benchInfo.append("Client count: ").append(valueM).append("<br>").append("Delta: ").append(valueDELTA).append("<br>");
+                    break;
+                case M:
+                    evaluate = benchmark.evaluate(requestCount, values(valueN, range.size()), range, values(valueDELTA, range.size()));
+                    range = evaluate.stream().map(point -> point.clients).collect(Collectors.toList());
+                    benchInfo.append("Array size: ").append(valueN).append("<br>").append("Delta: ").append(valueDELTA).append("<br>");
+                    break;
+                case DELTA:
+                    evaluate = benchmark.evaluate(requestCount, values(valueN, range.size()), values(valueM, range.size()), range);
+                    range = evaluate.stream().map(point -> point.interval).collect(Collectors.toList());
+                    benchInfo.append("Array size: ").append(valueN).append("<br>").append("Client count: ").append(valueM).append("<br>");
+                    break;
+            }
+        } finally {
+            if (serverProcess != null) {
+                serverProcess.close();
+            }
+        }
+        if (serverProcess != null) {
+            GcLogSummary gc = serverProcess.getGcSummary();
+            benchInfo.append("GC pauses: ").append(gc.pauses).append(", ").append(String.format("%.1f", gc.totalPauseTime)).append(" ms").append("<br>");
         }
 
         ChartPanel requestProcessTimeOnServerDataChart = createChart(
@@ -272,8 +388,31 @@ public class Client {
                 range.stream().map(Double::new).collect(Collectors.toList()),
                 evaluate.stream().map(Benchmark.Point::getAvgClientWaitingTime).collect(Collectors.toList()));
 
-        JPanel combined = new JPanel(new GridLayout(2, 2));
-        combined.setPreferredSize(new Dimension(800, 800));
+        ChartPanel phasesChart = createMultiSeriesChart(
+                "Server phases",
+                range.stream().map(Double::new).collect(Collectors.toList()),
+                evaluate.stream().map(Benchmark.Point::getPhaseTimes).collect(Collectors.toList()),
+                Arrays.asList(
+                        Pair.of("read", p -> p.readTime),
+                        Pair.of("parse", p -> p.parseTime),
+                        Pair.of("queue wait", p -> p.queueWaitTime),
+                        Pair.of("process", p -> p.processTime),
+                        Pair.of("handoff", p -> p.handoffTime),
+                        Pair.of("serialize", p -> p.serializeTime),
+                        Pair.of("output wait", p -> p.outputWaitTime)));
+
+        ChartPanel latencySplitChart = createMultiSeriesChart(
+                "Round trip split",
+                range.stream().map(Double::new).collect(Collectors.toList()),
+                evaluate.stream().map(Benchmark.Point::getLatencySplit).collect(Collectors.toList()),
+                Arrays.asList(
+                        Pair.of("client queue", s -> s.clientQueueTime),
+                        Pair.of("request network", s -> s.requestNetworkTime),
+                        Pair.of("server", s -> s.serverTime),
+                        Pair.of("response network", s -> s.responseNetworkTime)));
+
+        JPanel combined = new JPanel(new GridLayout(3, 2));
+        combined.setPreferredSize(new Dimension(800, 1200));
 
         JLabel label = new JLabel(benchInfo.toString(), SwingConstants.CENTER);
         label.setFont(new Font("", Font.PLAIN, 20));
@@ -281,11 +420,14 @@ public class Client {
         JPanel infoPanel = new JPanel();
         infoPanel.add(label);
         infoPanel.add(createSaveResultsButton(evaluate));
+        infoPanel.add(createSaveSamplesButton(benchmark.getSampleStore(), evaluate));
 
         combined.add(infoPanel);
         combined.add(requestProcessTimeOnServerDataChart);
         combined.add(clientProcessTimeOnServerChart);
         combined.add(clientAvgResponseTimeDataChart);
+        combined.add(phasesChart);
+        combined.add(latencySplitChart);
 
         combined.setBorder(BorderFactory.createLineBorder(Color.black));
 
@@ -318,14 +460,22 @@ public class Client {
         blockingPort = DEFAULT_BLOCKING_PORT;
         asyncPort = DEFAULT_ASYNC_PORT;
         nonBlockingPort = DEFAULT_NON_BLOCKING_PORT;
+        nettyPort = DEFAULT_NETTY_PORT;
+        reactivePort = DEFAULT_REACTIVE_PORT;
 
         selectedType = Server.ServerType.NON_BLOCKING;
+        inputDistribution = InputDistribution.SHUFFLED;
+        clientEngine = ClientEngine.BLOCKING;
         requestCount = 10;
         changeParameter = ChangeParameter.N;
         changeRange = Triple.of(100, 500, 200);
         valueN = 1000;
         valueM = 10;
         valueDELTA = 10;
+        streamChunkSize = 0;
+        multiplexedConnections = 1;
+        requestTimeoutMs = 0;
+        forkedServerFlags = null;
     }
 
     private int getPort(Server.ServerType type) {
@@ -338,6 +488,10 @@ public class Client {
                 return nonBlockingPort;
             case ASYNC:
                 return asyncPort;
+            case NETTY:
+                return nettyPort;
+            case REACTIVE:
+                return reactivePort;
         }
         return -1;
     }
@@ -379,7 +533,23 @@ public class Client {
                             } catch (Throwable ignored) {
                             }
                         },
-                        () -> nonBlockingPort));
+                        () -> nonBlockingPort),
+                Triple.of("Netty server port", s -> {
+                            try {
+                                nettyPort = Integer.parseInt(s);
+                            } catch (Throwable ignored) {
+                            }
+                        },
+                        () -> nettyPort),
+                Triple.of("Reactive server port", s -> {
+                            try {
+                                reactivePort = Integer.parseInt(s);
+                            } catch (Throwable ignored) {
+                            }
+                        },
+                        () -> reactivePort),
+                Triple.of("Forked server JVM flags (cancel - running server)", s -> forkedServerFlags = s,
+                        () -> forkedServerFlags == null ? "" : forkedServerFlags));
 
         actions.forEach(params -> {
             JMenuItem setter = new JMenuItem(params.getLeft());